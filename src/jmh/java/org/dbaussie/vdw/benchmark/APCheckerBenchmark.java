@@ -0,0 +1,59 @@
+package org.dbaussie.vdw.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.model.Partition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Benchmarks of the AP checks behind AbstractVdwGenerator.checkForAPFreenessFinalDigit, checkForAPFreenessAnyDigit and
+ * getForbiddenColors, run on certificates so no check can stop early at an AP.
+ * 
+ * Single calls flatter a checker that keeps state about the prefix (the incremental checker does all its work on the
+ * first call for a position) so extendCertificate replays the whole certificate one digit at a time from a reset
+ * checker, which is how the search uses them and is the fair comparison between engines.
+ * 
+ * @author dbaussie
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class APCheckerBenchmark {
+
+	@Benchmark
+	public int checkForAPFreenessFinalDigit(CertificateState state) {
+		return state.checker.checkFinalDigit(state.certificate,state.maxd,state.digitCount);
+	}
+
+	@Benchmark
+	public int checkForAPFreenessAnyDigit(CertificateState state) {
+		return state.checker.checkAnyDigit(state.certificate,state.maxd,state.digitCount);
+	}
+
+	@Benchmark
+	public int getForbiddenColors(CertificateState state) {
+		return state.checker.getForbiddenColors(state.certificate,state.maxd,state.digitCount);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int extendCertificate(CertificateState state) {
+		APChecker checker = state.checker;
+		Partition certificate = state.certificate;
+		Partition ptn = state.ptn;
+		int sequenceLength = state.sequenceLength;
+		int forbiddenColors = 0;
+		checker.reset();
+		ptn.setDigitCount(0);
+		for (int digitCount=1; digitCount<=state.digitCount; digitCount++) {
+			ptn.setDigitCount(digitCount);
+			forbiddenColors |= checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount);
+			ptn.setLastDigit(certificate.getDigit(digitCount-1));
+		}
+		return forbiddenColors;
+	}
+}
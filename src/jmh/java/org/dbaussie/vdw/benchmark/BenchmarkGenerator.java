@@ -0,0 +1,44 @@
+package org.dbaussie.vdw.benchmark;
+
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Gives the benchmarks access to the generator internals they measure and quietly builds the partitions they run on
+ * 
+ * @author dbaussie
+ *
+ */
+public class BenchmarkGenerator extends VdwGenerator {
+
+	// constants
+	final static public String SCALAR = "scalar";
+	final static public String BINARY = "binary"; // falls back to the scalar engine unless there are two colors
+	final static public String INCREMENTAL = "incremental";
+
+	public BenchmarkGenerator(int colorCount,int sequenceLength,int initialCount,String engine) {
+		super(colorCount,sequenceLength,initialCount);
+		useBitPacking = engine.equals(BINARY);
+		useIncrementalChecker = engine.equals(INCREMENTAL);
+		registerMetrics = false;
+		reportInterval = 0;
+		estimateProbeCount = 0;
+	}
+
+	@Override
+	public APChecker createChecker() {
+		return super.createChecker();
+	}
+
+	/**
+	 * Returns a certificate with digitCount digits stored the way the engine stores them
+	 */
+	public Partition createCertificate(int digitCount) {
+		Partition certificate = decide(digitCount).certificate;
+		if (certificate==null) {
+			throw new IllegalArgumentException(toString()+" has no certificate with "+digitCount+" digits");
+		}
+		return certificate;
+	}
+}
@@ -0,0 +1,150 @@
+package org.dbaussie.vdw.benchmark;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One engine run on one W(colorCount,sequenceLength) instance of the regression benchmark, with its measurements.
+ * 
+ * A run is written as a single line JSON object (see toJson) so a results file is also a baseline for later runs,
+ * parse reads one back from such a line.
+ * 
+ * Wall times are only compared with a baseline recorded on the same machine with the same number of cores, a run on
+ * any other machine only has its answer checked.
+ * 
+ * The node counts of the engines searching every initial certificate agree, they leave out the nodes above the initial
+ * certificates which are few. The streamed engine starts from much longer prefixes and leaves out far more, so its
+ * node count and nodes per second are lower and are not comparable with the other engines on the small instances.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BenchmarkRun {
+
+	// constants
+	final static public String OK = "ok";
+	final static public String WRONG = "wrong"; // the engine did not find the known value
+	final static public String SLOWER = "slower"; // slower than the baseline by more than the tolerance
+	final static public String NEW = "new"; // there is no baseline to compare against
+	final static public String OTHER_MACHINE = "other-machine"; // the baseline was recorded on another machine so the times are not compared
+	final static public String BASELINE = "baseline"; // a run stored in the baseline
+	final static public String LOCAL_MACHINE = getMachine();
+	final static private Pattern FIELD_PATTERN = Pattern.compile("\"(\\w+)\":\\s*(\"[^\"]*\"|[-0-9.eE]+)");
+
+	// properties
+	final public String engine;
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int expected; // the known value of W(colorCount,sequenceLength)
+	public String machine = LOCAL_MACHINE; // the host the run was made on
+	public int coreCount = Runtime.getRuntime().availableProcessors();
+	public int result = -1;
+	public int runCount; // the number of times the instance was run, the fastest counts
+	public long wallMillis;
+	public long nodeCount;
+	public double nodesPerSecond;
+	public long peakHeapBytes; // the most heap in use during any of the runs
+	public long baselineMillis = -1; // the wall time of the baseline run or -1 if there is none
+	public String status = NEW;
+
+	public BenchmarkRun(String engine,int colorCount,int sequenceLength,int expected) {
+		this.engine = engine;
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.expected = expected;
+	}
+
+	/**
+	 * Parses a run from a line written by toJson, returning null if the line holds no run
+	 */
+	static public BenchmarkRun parse(String line) {
+		Map<String,String> fieldMap = new HashMap<String,String>();
+		Matcher matcher = FIELD_PATTERN.matcher(line);
+		while (matcher.find()) {
+			fieldMap.put(matcher.group(1),matcher.group(2).replace("\"",""));
+		}
+		if (!fieldMap.containsKey("engine") || !fieldMap.containsKey("colorCount")) {
+			return null;
+		}
+		BenchmarkRun run = new BenchmarkRun(fieldMap.get("engine"),Integer.parseInt(fieldMap.get("colorCount")),
+				Integer.parseInt(fieldMap.get("sequenceLength")),Integer.parseInt(fieldMap.get("expected")));
+		run.result = Integer.parseInt(fieldMap.getOrDefault("result","-1"));
+		run.status = fieldMap.getOrDefault("status",BASELINE);
+		run.machine = fieldMap.getOrDefault("machine","unknown");
+		run.coreCount = Integer.parseInt(fieldMap.getOrDefault("coreCount","0"));
+		run.runCount = Integer.parseInt(fieldMap.getOrDefault("runCount","0"));
+		run.wallMillis = Long.parseLong(fieldMap.getOrDefault("wallMillis","-1"));
+		run.baselineMillis = Long.parseLong(fieldMap.getOrDefault("baselineMillis","-1"));
+		run.nodeCount = Long.parseLong(fieldMap.getOrDefault("nodeCount","0"));
+		run.nodesPerSecond = Double.parseDouble(fieldMap.getOrDefault("nodesPerSecond","0"));
+		run.peakHeapBytes = Long.parseLong(fieldMap.getOrDefault("peakHeapBytes","0"));
+		return run;
+	}
+
+	/**
+	 * Returns the name of the host the benchmark runs on, or unknown if it has none
+	 */
+	static public String getMachine() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			return "unknown";
+		}
+	}
+
+	/**
+	 * Returns true if the run was made on the same machine with the same number of cores as the given run,
+	 * so that their wall times can be compared
+	 */
+	public boolean isSameMachine(BenchmarkRun run) {
+		return machine.equals(run.machine) && coreCount==run.coreCount;
+	}
+
+	/**
+	 * Returns the key identifying the same run in a baseline
+	 */
+	public String getKey() {
+		return engine+" "+toString();
+	}
+
+	/**
+	 * Sets the status from the result and the baseline, a run is slower if it takes more than (1+tolerance) times the
+	 * baseline plus slackMillis, the slack keeping timer noise on the shortest runs from being reported.
+	 * The times of runs on different machines are not compared.
+	 */
+	public void compare(BenchmarkRun baseline,double tolerance,long slackMillis) {
+		baselineMillis = baseline!=null && isSameMachine(baseline) ? baseline.wallMillis : -1;
+		if (result!=expected) {
+			status = WRONG;
+		} else if (baseline==null) {
+			status = NEW;
+		} else if (!isSameMachine(baseline)) {
+			status = OTHER_MACHINE;
+		} else if (wallMillis>baselineMillis*(1+tolerance)+slackMillis) {
+			status = SLOWER;
+		} else {
+			status = OK;
+		}
+	}
+
+	/**
+	 * Returns the run as a single line JSON object, the baseline time only being written if there is one
+	 */
+	public String toJson() {
+		return String.format(Locale.ROOT,"{\"engine\": \"%s\", \"instance\": \"%s\", \"colorCount\": %d, \"sequenceLength\": %d, "
+				+"\"expected\": %d, \"result\": %d, \"status\": \"%s\", \"machine\": \"%s\", \"coreCount\": %d, \"runCount\": %d, \"wallMillis\": %d, %s"
+				+"\"nodeCount\": %d, \"nodesPerSecond\": %.0f, \"peakHeapBytes\": %d}",
+				engine,toString(),colorCount,sequenceLength,expected,result,status,machine,coreCount,runCount,wallMillis,
+				baselineMillis>=0 ? "\"baselineMillis\": "+baselineMillis+", " : "",nodeCount,nodesPerSecond,peakHeapBytes);
+	}
+
+	@Override
+	public String toString() {
+		return "W("+colorCount+","+sequenceLength+")";
+	}
+}
@@ -0,0 +1,47 @@
+package org.dbaussie.vdw.benchmark;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.model.Partition;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A certificate close to the known bounds of a realistic instance together with the checker of the engine being measured.
+ * The instance is given as colorCount:sequenceLength:digitCount, the certificates are found with the generator itself
+ * during setup (which takes at most a second or so per instance).
+ * 
+ * @author dbaussie
+ *
+ */
+@State(Scope.Thread)
+public class CertificateState {
+
+	// properties
+	@Param({"2:5:150","2:6:150","3:3:26","3:4:100","4:3:50"})
+	public String instance;
+	@Param({BenchmarkGenerator.SCALAR,BenchmarkGenerator.BINARY,BenchmarkGenerator.INCREMENTAL})
+	public String engine;
+	public int colorCount;
+	public int sequenceLength;
+	public int digitCount;
+	public int maxd; // the largest difference of an AP ending at the last digit
+	public APChecker checker;
+	public Partition certificate; // must not be changed by the benchmarks
+	public Partition ptn; // a copy of the certificate the benchmarks are free to change
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String[] values = instance.split(":");
+		colorCount = Integer.parseInt(values[0]);
+		sequenceLength = Integer.parseInt(values[1]);
+		digitCount = Integer.parseInt(values[2]);
+		maxd = (digitCount-1) / (sequenceLength-1);
+		BenchmarkGenerator generator = new BenchmarkGenerator(colorCount,sequenceLength,-1,engine);
+		checker = generator.createChecker();
+		certificate = generator.createCertificate(digitCount);
+		ptn = certificate.clone();
+	}
+}
@@ -0,0 +1,48 @@
+package org.dbaussie.vdw.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.dbaussie.vdw.model.Partition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks generating the initial certificates with the default initial digit counts (sequenceLength+1)
+ * 
+ * @author dbaussie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeneratorBenchmark {
+
+	// properties
+	@Param({"2:5","2:6","3:3","3:4","4:3"})
+	public String instance;
+	@Param({BenchmarkGenerator.SCALAR,BenchmarkGenerator.BINARY})
+	public String engine;
+
+	// attributes
+	private BenchmarkGenerator _generator;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String[] values = instance.split(":");
+		_generator = new BenchmarkGenerator(Integer.parseInt(values[0]),Integer.parseInt(values[1]),-1,engine);
+	}
+
+	@Benchmark
+	public List<Partition> streamCertificates() {
+		return _generator.streamCertificates(_generator.initialDigitCount).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,41 @@
+package org.dbaussie.vdw.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dbaussie.vdw.model.Partition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Benchmarks of the Partition operations used by the search
+ * 
+ * @author dbaussie
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PartitionBenchmark {
+
+	@Benchmark
+	public boolean increment(CertificateState state) {
+		return state.ptn.increment();
+	}
+
+	/**
+	 * Backtracks one digit and extends again as the search does
+	 */
+	@Benchmark
+	public int setDigitCount(CertificateState state) {
+		Partition ptn = state.ptn;
+		ptn.setDigitCount(state.digitCount-1);
+		ptn.setDigitCount(state.digitCount);
+		return ptn.digitCount;
+	}
+
+	@Benchmark
+	public Partition clone(CertificateState state) {
+		return state.certificate.clone();
+	}
+}
@@ -0,0 +1,251 @@
+package org.dbaussie.vdw.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dbaussie.vdw.AbstractVdwGenerator;
+import org.dbaussie.vdw.PortfolioVdwGenerator;
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.order.ValueOrdering;
+
+/**
+ * End to end regression benchmark: runs every search engine on instances whose answers are known, checks the answers and
+ * compares the wall times with a baseline from an earlier run, unlike the JMH benchmarks which time single operations.
+ * 
+ * Each engine and instance is run runCount times and the fastest run counts, its wall time, nodes visited and nodes per second being recorded together with the most heap in use during
+ * any of the runs. The heap is the sum of the peak usage of the heap memory pools, reset before each run, so it is an
+ * upper bound as the pools need not peak at the same moment.
+ * 
+ * The runs are written to a JSON file, one run per line (see BenchmarkRun). A run giving the wrong answer, or taking more
+ * than tolerance longer than a baseline recorded on the same machine, fails the benchmark. With --update the runs giving
+ * the right answer replace their runs in the baseline, the other runs in the baseline being kept, and only slower runs
+ * are excused. A wrong answer always fails.
+ * 
+ * W(2,5) takes minutes for each engine and run so by default only the instances up to maxSequenceLength 4 are run,
+ * --full runs them all.
+ * 
+ * @author dbaussie
+ *
+ */
+public class RegressionBenchmark {
+
+	// constants
+	final static public String SEQUENTIAL = "sequential";
+	final static public String SEQUENTIAL_INCREMENTAL = "sequential-incremental";
+	final static public String THREADED = "threaded";
+	final static public String THREADED_FORWARD_CHECKING = "threaded-fc";
+	final static public String THREADED_STREAMED = "threaded-streamed";
+	final static public String PORTFOLIO = "portfolio";
+	final static public String[] ENGINES = { SEQUENTIAL, SEQUENTIAL_INCREMENTAL, THREADED, THREADED_FORWARD_CHECKING, THREADED_STREAMED, PORTFOLIO };
+	final static public int[][] INSTANCES = { {2,3,9}, {2,4,35}, {3,3,27}, {2,5,178} }; // colorCount, sequenceLength, W
+	final static public String UPDATE = "--update";
+	final static public String ENGINES_OPTION = "--engines="; // a comma separated list of engines to run instead of all
+	final static public String MAX_SEQUENCE_LENGTH_OPTION = "--max-sequence-length="; // only run the instances up to this sequence length
+	final static public String FULL = "--full"; // run every instance
+
+	// properties
+	public List<String> engines = Arrays.asList(ENGINES);
+	public int maxSequenceLength = 4; // the instances with longer sequences are skipped
+	public int runCount = 3;
+	public double tolerance = 0.25;
+	public long slackMillis = 50;
+
+	/**
+	 * Runs the benchmark, exiting with status 1 if any run failed
+	 */
+	static public void main(String[] argv) throws IOException {
+		RegressionBenchmark benchmark = new RegressionBenchmark();
+		List<String> args = new ArrayList<String>();
+		boolean update = false;
+		for (String arg : argv) {
+			if (arg.equals(UPDATE)) {
+				update = true;
+			} else if (arg.startsWith(ENGINES_OPTION)) {
+				benchmark.engines = Arrays.asList(arg.substring(ENGINES_OPTION.length()).split(","));
+			} else if (arg.startsWith(MAX_SEQUENCE_LENGTH_OPTION)) {
+				benchmark.maxSequenceLength = Integer.parseInt(arg.substring(MAX_SEQUENCE_LENGTH_OPTION.length()));
+			} else if (arg.equals(FULL)) {
+				benchmark.maxSequenceLength = Integer.MAX_VALUE;
+			} else {
+				args.add(arg);
+			}
+		}
+		if (args.size()<2) {
+			System.out.println("Usage: RegressionBenchmark baselineFile resultFile ["+UPDATE+"] ["+ENGINES_OPTION+"engine,...] ["+MAX_SEQUENCE_LENGTH_OPTION+"t|"+FULL+"]");
+			return;
+		}
+		Path baselinePath = Paths.get(args.get(0));
+		Map<String,BenchmarkRun> baselineMap = readRuns(baselinePath);
+		List<BenchmarkRun> runList = benchmark.run(baselineMap);
+		Path resultPath = Paths.get(args.get(1));
+		writeRuns(resultPath,runList);
+		System.out.println("Wrote "+runList.size()+" runs to "+resultPath);
+		if (runList.stream().anyMatch(run -> run.status.equals(BenchmarkRun.OTHER_MACHINE))) {
+			System.out.println("The baseline was recorded on another machine so only the answers were checked, record one on "
+					+BenchmarkRun.LOCAL_MACHINE+" with "+UPDATE);
+		}
+		if (update) {
+			int updatedCount = 0;
+			for (BenchmarkRun run : runList) {
+				if (run.result==run.expected) {
+					BenchmarkRun baseline = BenchmarkRun.parse(run.toJson());
+					baseline.status = BenchmarkRun.BASELINE;
+					baseline.baselineMillis = -1;
+					baselineMap.put(baseline.getKey(),baseline);
+					updatedCount++;
+				}
+			}
+			writeRuns(baselinePath,new ArrayList<BenchmarkRun>(baselineMap.values()));
+			System.out.println("Updated "+updatedCount+" runs in the baseline "+baselinePath);
+		}
+		// a slower run is expected when updating the baseline but a wrong answer never is
+		final boolean slowerFails = !update;
+		long failedCount = runList.stream().filter(run -> run.status.equals(BenchmarkRun.WRONG) || (run.status.equals(BenchmarkRun.SLOWER) && slowerFails)).count();
+		if (failedCount>0) {
+			System.out.println(failedCount+" of "+runList.size()+" runs failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the runs of a baseline keyed by BenchmarkRun.getKey in the order they were written, a missing file being an empty baseline
+	 */
+	static public Map<String,BenchmarkRun> readRuns(Path path) throws IOException {
+		Map<String,BenchmarkRun> runMap = new LinkedHashMap<String,BenchmarkRun>();
+		if (!Files.exists(path)) {
+			return runMap;
+		}
+		for (String line : Files.readAllLines(path)) {
+			BenchmarkRun run = BenchmarkRun.parse(line);
+			if (run!=null) {
+				runMap.put(run.getKey(),run);
+			}
+		}
+		return runMap;
+	}
+
+	static public void writeRuns(Path path,List<BenchmarkRun> runList) throws IOException {
+		if (path.getParent()!=null) {
+			Files.createDirectories(path.getParent());
+		}
+		List<String> lines = new ArrayList<String>();
+		lines.add("[");
+		for (int index=0; index<runList.size(); index++) {
+			lines.add("\t"+runList.get(index).toJson()+(index<runList.size()-1 ? "," : ""));
+		}
+		lines.add("]");
+		Files.write(path,lines);
+	}
+
+	/**
+	 * Runs every engine on every instance up to maxSequenceLength, comparing each with its run in the baseline
+	 */
+	public List<BenchmarkRun> run(Map<String,BenchmarkRun> baselineMap) {
+		List<BenchmarkRun> runList = new ArrayList<BenchmarkRun>();
+		for (int[] instance : INSTANCES) {
+			if (instance[1]>maxSequenceLength) {
+				continue;
+			}
+			for (String engine : engines) {
+				BenchmarkRun run = new BenchmarkRun(engine,instance[0],instance[1],instance[2]);
+				measure(run);
+				run.compare(baselineMap.get(run.getKey()),tolerance,slackMillis);
+				System.out.println(String.format("%-24s %-8s result=%-4d %8dms %12.0f nodes/s %6dMB %s%s",engine,run,run.result,run.wallMillis,
+						run.nodesPerSecond,run.peakHeapBytes>>20,run.status,run.baselineMillis>=0 ? " (baseline "+run.baselineMillis+"ms)" : ""));
+				runList.add(run);
+			}
+		}
+		return runList;
+	}
+
+	/**
+	 * Runs the engine on the instance up to runCount times, keeping the fastest run
+	 */
+	protected void measure(BenchmarkRun run) {
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType()==MemoryType.HEAP) {
+				heapPools.add(pool);
+			}
+		}
+		run.wallMillis = Long.MAX_VALUE;
+		while (run.runCount<runCount) {
+			AbstractVdwGenerator generator = createGenerator(run);
+			System.gc();
+			heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+			long startTime = System.nanoTime();
+			generator.generate();
+			long wallMillis = (System.nanoTime() - startTime) / 1000000;
+			long peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+			run.runCount++;
+			run.peakHeapBytes = Math.max(run.peakHeapBytes,peakHeapBytes);
+			if (generator.getResult()!=run.expected) {
+				// a wrong answer is reported whatever the other runs give
+				run.result = generator.getResult();
+				run.wallMillis = wallMillis;
+				break;
+			}
+			if (wallMillis<run.wallMillis) {
+				run.result = generator.getResult();
+				run.wallMillis = wallMillis;
+				run.nodeCount = generator.getMetrics()!=null ? generator.getMetrics().getNodeCount() : generator.getVisitedCount();
+				run.nodesPerSecond = run.nodeCount * 1000.0 / Math.max(wallMillis,1);
+			}
+		}
+	}
+
+	/**
+	 * Creates a quiet generator for the run's engine, one of the ENGINES
+	 */
+	protected AbstractVdwGenerator createGenerator(BenchmarkRun run) {
+		final int colorCount = run.colorCount;
+		final int sequenceLength = run.sequenceLength;
+		AbstractVdwGenerator generator;
+		switch (run.engine) {
+		case SEQUENTIAL:
+			generator = new VdwGenerator(colorCount,sequenceLength,-1);
+			break;
+		case SEQUENTIAL_INCREMENTAL:
+			generator = new VdwGenerator(colorCount,sequenceLength,-1);
+			generator.useBitPacking = false;
+			generator.useIncrementalChecker = true;
+			break;
+		case THREADED:
+			generator = new ThreadedVdwGenerator(colorCount,sequenceLength);
+			break;
+		case THREADED_FORWARD_CHECKING:
+			generator = new ThreadedVdwGenerator(colorCount,sequenceLength);
+			generator.forwardCheckHorizon = 4*sequenceLength;
+			break;
+		case THREADED_STREAMED:
+			// deep enough for thousands of prefixes, which must still be shorter than the answer
+			ThreadedVdwGenerator streamed = new ThreadedVdwGenerator(colorCount,sequenceLength,Math.min(4*sequenceLength,run.expected/2));
+			streamed.prefixWindow = 64;
+			generator = streamed;
+			break;
+		case PORTFOLIO:
+			// without restarts the ascending worker is an exhaustive search, so the portfolio's answer is exact
+			PortfolioVdwGenerator portfolio = new PortfolioVdwGenerator(colorCount,sequenceLength);
+			portfolio.portfolio = new String[] { ValueOrdering.ASCENDING, ValueOrdering.LEAST_CONSTRAINING };
+			portfolio.restartBase = 0;
+			generator = portfolio;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown engine "+run.engine+", expected one of "+Arrays.toString(ENGINES));
+		}
+		generator.registerMetrics = false;
+		generator.reportInterval = 0;
+		return generator;
+	}
+}
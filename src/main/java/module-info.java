@@ -1,4 +1,11 @@
 module org.dbaussie.vdw {
 	exports org.dbaussie.vdw;
+	exports org.dbaussie.vdw.cluster;
+	exports org.dbaussie.vdw.metrics;
+	exports org.dbaussie.vdw.order;
+	exports org.dbaussie.vdw.store;
+	exports org.dbaussie.vdw.sweep;
+	exports org.dbaussie.vdw.validate;
 	requires com.google.common;
+	requires java.management;
 }
\ No newline at end of file
@@ -1,24 +1,57 @@
 package org.dbaussie.vdw;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.check.BinaryAPChecker;
+import org.dbaussie.vdw.check.BitSlicedAPChecker;
+import org.dbaussie.vdw.check.ForwardChecker;
+import org.dbaussie.vdw.check.IncrementalAPChecker;
+import org.dbaussie.vdw.check.ScalarAPChecker;
 import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.metrics.SearchMetrics;
 import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.CertificateWriter;
+import org.dbaussie.vdw.util.ArrayUtil;
 
 abstract public class AbstractVdwGenerator {
 
+	// constants
+	final static public String FORWARD_CHECKING = "-fc"; // appended to the algorithm name when forward checking is switched on
+
 	// attributes
 	protected long _startTime;
 	protected long _totalDuration; // total duration in ms
 	protected int _result;
+	protected APChecker _checker;
+	protected double _estimatedCount; // the estimated number of certificates the search visits or 0 if unknown
+	protected long _visitedCount; // the number of certificates the search has visited
+	protected Partition _certificate; // the certificate reaching abortDigitCount if the search was stopped there
+	protected int _subtreeCount; // the number of initial certificates searched to completion
+	protected SearchMetrics _metrics; // the progress of the current or last search
+	protected CertificateWriter _certificateWriter; // records the certificates visited by the current search if certificatePath is set
 
 	// properties
 	public int colorCount;
 	public int sequenceLength;
-	public int abortDigitCount = -1; // if this is not -1 the stop the search here
+	public int abortDigitCount = -1; // if this is not -1 the stop the search as soon as a certificate with abortDigitCount-1 digits is found
 	public int initialDigitCount;
 	public String algorithm;
+	public boolean useBitPacking = true; // use the bit packed partition and checker when colorCount==2
+	public boolean useBitSlicing = false; // use the bit sliced partition and checker when colorCount>2
+	public boolean useIncrementalChecker = false; // otherwise use the incremental run length checker instead of the scalar one
+	public boolean registerMetrics = true; // expose the search metrics as a JMX MBean while searching
+	public int reportInterval = 60; // the number of seconds between progress reports, 0 for none
+	public int metricsInterval = 1 << 14; // the number of nodes a worker visits between metrics updates
+	public int estimateProbeCount = 1000; // the number of random probes used to estimate the size of each subtree, 0 to skip estimation
+	public int forwardCheckHorizon = 0; // if positive abandon any prefix leaving a position up to this many digits ahead with no color, see ForwardChecker
+	public String certificatePath; // if set the certificates visited are recorded to this file, see CertificateWriter
+	public int certificateDigitCount = 0; // record every certificate with at least this many digits, 0 for the longest only
 
 	public AbstractVdwGenerator(int colorCount,int sequenceLength,int initialCount) {
 		this.colorCount = colorCount;
@@ -34,7 +67,7 @@ abstract public class AbstractVdwGenerator {
 	abstract public void calculate();
 
 	public void generate() {
-		System.out.println("Computing "+toString()+" with algorithm "+algorithm);
+		System.out.println("Computing "+toString()+" with algorithm "+getAlgorithm());
 		_startTime = new Date().getTime();
 		calculate();
 		long endTime = new Date().getTime();
@@ -42,72 +75,269 @@ abstract public class AbstractVdwGenerator {
 		System.out.println("\nCalculated "+toString()+" = "+getResult()+" in "+getFormattedDuration());
 	}
 
-	protected boolean generateAllCertificates(Partition ptn,int digitCount,int maxd,ArrayList<Partition> certList) {
-		Log.log("    Generating all certificates of length "+digitCount);
-		ptn.setDigitCount(digitCount);
-		//ptn.setDigitAt(0,colorCount-1);
-		boolean done = false;
-		boolean foundAnyCert = false;
-		while (!done) {
-			int lastAPPosition = checkForAPFreenessAnyDigit(ptn,maxd,digitCount);
-			boolean foundCert = lastAPPosition == -1;
-			if (foundCert) {
-				foundAnyCert = true;
-				certList.add(ptn.clone());
-			} else {
-				ptn.maskTrailingDigits(lastAPPosition);
+	/**
+	 * Decision mode: decides whether W(k,t) > digitCount by searching for a certificate with digitCount digits.
+	 * The search stops as soon as one is found, otherwise it runs to completion.
+	 */
+	public Decision decide(int digitCount) {
+		int oldAbortDigitCount = abortDigitCount;
+		int oldInitialDigitCount = initialDigitCount;
+		abortDigitCount = digitCount + 1;
+		// the initial certificates must not be longer than the certificate we are looking for
+		initialDigitCount = Math.min(initialDigitCount,digitCount);
+		_startTime = new Date().getTime();
+		_certificate = null;
+		_subtreeCount = 0;
+		try {
+			calculate();
+		} finally {
+			abortDigitCount = oldAbortDigitCount;
+			initialDigitCount = oldInitialDigitCount;
+		}
+		Decision decision = new Decision(colorCount,sequenceLength,digitCount);
+		decision.duration = new Date().getTime() - _startTime;
+		decision.visitedCount = _visitedCount;
+		if (_certificate!=null) {
+			int lastAPPosition = createChecker().checkAnyDigit(_certificate,(digitCount-1) / (sequenceLength-1),digitCount);
+			if (_certificate.digitCount!=digitCount || lastAPPosition!=-1) {
+				throw new IllegalStateException("Invalid certificate for "+toString()+" > "+digitCount+": "+_certificate);
 			}
-			done = !ptn.increment();
+			decision.certificate = _certificate;
+		} else if (getResult()<0) {
+			throw new IllegalStateException("The search for "+toString()+" > "+digitCount+" was stopped before it was exhausted");
+		} else {
+			decision.subtreeCount = _subtreeCount;
+		}
+		return decision;
+	}
+
+	/**
+	 * Returns the certificates of the given length that the search could pass through, ie those allowed by the symmetry breaking,
+	 * enumerated lazily in the order the search visits them, see PrefixSpliterator
+	 */
+	public Stream<Partition> streamCertificates(int digitCount) {
+		return StreamSupport.stream(new PrefixSpliterator(this,digitCount),false);
+	}
+
+	/**
+	 * Creates the checker used to look for APs.
+	 * Two color problems use bit packed partitions with a word parallel checker unless useBitPacking is switched off,
+	 * otherwise the scalar checker is used unless useIncrementalChecker is switched on.
+	 * Checkers may keep state about the current prefix so each search thread needs its own.
+	 */
+	protected APChecker createChecker() {
+		if (colorCount==2 && useBitPacking) {
+			return new BinaryAPChecker(sequenceLength);
+		}
+		if (colorCount>2 && useBitSlicing) {
+			return new BitSlicedAPChecker(colorCount,sequenceLength);
 		}
-		return foundAnyCert;
+		if (useIncrementalChecker) {
+			return new IncrementalAPChecker(colorCount,sequenceLength);
+		}
+		return new ScalarAPChecker(colorCount,sequenceLength);
 	}
 
 	protected int checkForAPFreenessFinalDigit(Partition ptn,int maxd,int digitCount) {
-		int lastAPPosition = -1;
-		boolean done = false;
-		for (int d=1; d<=maxd && !done; d++) {
-			int value = ptn.getLastDigit();
-			lastAPPosition = checkForAPRightToLeft(ptn,digitCount-1,d,value);
-			done = lastAPPosition != -1;
-		}
-		return lastAPPosition;
-	}
-
-	protected int checkForAPRightToLeft(Partition ptn,int position,int difference,int value) {
-		int pos = position;
-		for (int n=1; n<sequenceLength; n++) {
-			pos -= difference;
-			if (value != ptn.getDigit(pos)) {
-				return -1;
+		return _checker.checkFinalDigit(ptn,maxd,digitCount);
+	}
+
+	protected int getForbiddenColors(Partition ptn,int maxd,int digitCount) {
+		return _checker.getForbiddenColors(ptn,maxd,digitCount);
+	}
+
+	/**
+	 * Returns the mask of colors excluded from the last digit by symmetry breaking, by default none are
+	 */
+	protected int getSymmetryColors(Partition ptn,int digitCount) {
+		return 0;
+	}
+
+	/**
+	 * Estimates the number of certificates below a prefix using Knuth's estimator.
+	 * Each probe extends the prefix one random allowed color at a time until it reaches a dead end, estimating the
+	 * number of certificates at each depth as the product of the numbers of allowed colors above it.
+	 * The mean over many probes is an unbiased estimate of the number of certificates the search visits below the prefix.
+	 * The digits after the prefix are left cleared.
+	 */
+	protected double estimateTreeSize(APChecker checker,Partition ptn,int prefixLength,int probeCount,Random random) {
+		final int allColors = checker.getAllColors();
+		double total = 0;
+		for (int probe=0; probe<probeCount; probe++) {
+			checker.reset();
+			ptn.setDigitCount(prefixLength);
+			double levelCount = 1;
+			int digitCount = prefixLength + 1;
+			while (abortDigitCount<=0 || digitCount<abortDigitCount) {
+				ptn.setDigitCount(digitCount);
+				int forbiddenColors = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
+				int allowedColors = ~forbiddenColors & allColors;
+				int branchCount = Integer.bitCount(allowedColors);
+				if (branchCount==0) {
+					break;
+				}
+				levelCount *= branchCount;
+				total += levelCount;
+				for (int skip=random.nextInt(branchCount); skip>0; skip--) {
+					allowedColors &= allowedColors - 1;
+				}
+				ptn.setLastDigit(Integer.numberOfTrailingZeros(allowedColors));
+				digitCount++;
 			}
 		}
-		return position;
+		ptn.setDigitCount(prefixLength);
+		return total / probeCount;
 	}
 
-	protected int checkForAPFreenessAnyDigit(Partition ptn,int maxd,int digitCount) {
-		int lastAPPosition = -1;
-		boolean done = false;
-		int ub = digitCount;
-		for (int d=1; d<=maxd && !done; d++) {
-			ub = ub - (sequenceLength-1);
-			for (int a=0; a<ub && !done; a++) { // ub = w-d*(N-1)
-				int v = ptn.getDigit(a);
-				lastAPPosition = checkForAPLeftToRight(ptn,a,d,v);
-				done = lastAPPosition != -1;
-			}
+	/**
+	 * Returns the estimated time remaining given the number of certificates visited so far or an empty string if there is no estimate
+	 */
+	protected String formatEta(long visitedCount) {
+		if (_estimatedCount<=0 || visitedCount<=0) {
+			return "";
 		}
-		return lastAPPosition;
+		if (visitedCount>=_estimatedCount) {
+			return " eta unknown (estimate exceeded)";
+		}
+		long dur = System.currentTimeMillis() - _startTime;
+		double remaining = (_estimatedCount - visitedCount) / visitedCount;
+		return " eta "+formatDuration((long)(dur * remaining / 1000));
 	}
 
-	protected int checkForAPLeftToRight(Partition ptn,int position,int difference,int value) {
-		int pos = position;
-		for (int n=1; n<sequenceLength; n++) {
-			pos += difference;
-			if (value != ptn.getDigit(pos)) {
-				return -1;
-			}
+	/**
+	 * Creates the metrics for a new search, registering them and starting the reporter as configured
+	 */
+	protected SearchMetrics startMetrics() {
+		_metrics = new SearchMetrics(toString());
+		_metrics.start(registerMetrics,reportInterval);
+		return _metrics;
+	}
+
+	/**
+	 * Returns the progress metrics of the current or last search
+	 */
+	public SearchMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Returns the number of certificates visited by the last search
+	 */
+	public long getVisitedCount() {
+		return _visitedCount;
+	}
+
+	/**
+	 * Returns the name of the algorithm, including the forward checking when it is switched on
+	 */
+	public String getAlgorithm() {
+		return forwardCheckHorizon>0 ? algorithm+FORWARD_CHECKING : algorithm;
+	}
+
+	/**
+	 * Returns a new forward checker or null if forward checking is switched off
+	 */
+	protected ForwardChecker createForwardChecker() {
+		return forwardCheckHorizon>0 ? new ForwardChecker(colorCount,sequenceLength,forwardCheckHorizon) : null;
+	}
+
+	/**
+	 * Returns the last position a prefix must still be able to reach to be worth searching, given the longest certificate so far.
+	 * Certificates as long as the longest (or at least certificateDigitCount long) are wanted too when they are being recorded.
+	 */
+	protected int getPruneLimit(int bestDigitCount) {
+		int limit = Math.max(bestDigitCount,abortDigitCount-2);
+		if (_certificateWriter!=null) {
+			limit = Math.min(limit,certificateDigitCount>0 ? certificateDigitCount-1 : bestDigitCount-1);
+		}
+		return limit;
+	}
+
+	/**
+	 * Returns the lexicographic leader of a certificate's symmetry class under color permutations and reversal,
+	 * ie the lower of the normalized certificate and its normalized reverse.
+	 */
+	protected Partition getLeader(Partition ptn) {
+		int digitCount = ptn.digitCount;
+		int[] digits = Arrays.copyOf(ptn.getUnderlyingArray(),digitCount);
+		int[] reverseDigits = new int[digitCount];
+		ArrayUtil.normalizeColors(digits,digitCount,colorCount);
+		ArrayUtil.reverse(digits,reverseDigits,digitCount);
+		ArrayUtil.normalizeColors(reverseDigits,digitCount,colorCount);
+		if (ArrayUtil.compare(reverseDigits,digits,digitCount)<0) {
+			digits = reverseDigits;
+		}
+		Partition leader = ptn.clone();
+		for (int d=0; d<digitCount; d++) {
+			leader.setDigitAt(d,digits[d]);
+		}
+		return leader;
+	}
+
+	/**
+	 * Opens the certificate file if certificatePath is set, a file that cannot be opened just means nothing is recorded
+	 */
+	protected void openCertificateWriter() {
+		_certificateWriter = null;
+		if (certificatePath==null) {
+			return;
+		}
+		try {
+			_certificateWriter = new CertificateWriter(certificatePath,colorCount,sequenceLength,certificateDigitCount);
+		} catch (IOException e) {
+			System.out.println("    Unable to open certificate file "+certificatePath+": "+e);
+		}
+	}
+
+	/**
+	 * Writes any queued certificates and closes the certificate file
+	 */
+	protected void closeCertificateWriter() {
+		if (_certificateWriter==null) {
+			return;
+		}
+		try {
+			_certificateWriter.close();
+			Log.log("    Recorded "+_certificateWriter.getCertificateCount()+" certificates to "+certificatePath);
+		} catch (IOException e) {
+			System.out.println("    Unable to write certificate file "+certificatePath+": "+e);
 		}
-		return pos;
+		_certificateWriter = null;
+	}
+
+	/**
+	 * Returns the lowest allowed color from fromColor upwards that the forward checker can place at a position without leaving a
+	 * position up to limit with no color, or colorCount if there is none.
+	 * The color is placed in the forward checker but not in the partition.
+	 */
+	protected int nextViableColor(ForwardChecker forwardChecker,int forbiddenColors,int fromColor,Partition ptn,int position,int limit) {
+		int color = nextAllowedColor(forbiddenColors,fromColor);
+		while (color<colorCount && !forwardChecker.place(ptn,position,color,limit)) {
+			color = nextAllowedColor(forbiddenColors,color+1);
+		}
+		return color;
+	}
+
+	/**
+	 * Returns the lowest color from fromColor upwards that is not in the forbidden color mask or colorCount if there is none
+	 */
+	protected int nextAllowedColor(int forbiddenColors,int fromColor) {
+		int allowedColors = ~forbiddenColors & (-1 << fromColor);
+		return Math.min(Integer.numberOfTrailingZeros(allowedColors),colorCount);
+	}
+
+	/**
+	 * Makes sure a per position stack can be indexed by digitCount growing it by a block if needed
+	 */
+	static protected int[] ensureStackCapacity(int[] stack,int digitCount) {
+		if (digitCount<stack.length) {
+			return stack;
+		}
+		return Arrays.copyOf(stack,digitCount+Partition.BLOCK_SIZE);
+	}
+
+	protected int checkForAPFreenessAnyDigit(Partition ptn,int maxd,int digitCount) {
+		return _checker.checkAnyDigit(ptn,maxd,digitCount);
 	}
 
 	public int getResult() {
@@ -0,0 +1,124 @@
+package org.dbaussie.vdw;
+
+import java.util.Arrays;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * The number of AP free colorings of every length, as counted by ThreadedVdwGenerator.count().
+ * 
+ * The search only visits colorings whose colors first appear in descending order, so the counts are kept by the number
+ * of colors used. Each normalized coloring using c of the k colors stands for k!/(k-c)! colorings, one for every way of
+ * assigning the colors. Each worker counts into its own instance and the instances are merged at the end.
+ * 
+ * @author dbaussie
+ *
+ */
+public class ColoringCount {
+
+	// properties
+	public int colorCount;
+	public int sequenceLength;
+	public boolean normalized; // true if only normalized colorings were counted
+	public long duration; // in ms
+
+	// attributes
+	protected long[][] _counts; // the number of colorings visited using each number of colors (index 1..colorCount) with each digit count
+	protected int _maxDigitCount; // the longest coloring counted
+
+	public ColoringCount(int colorCount,int sequenceLength,boolean normalized) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.normalized = normalized;
+		_counts = new long[colorCount+1][Partition.BLOCK_SIZE];
+	}
+
+	/**
+	 * Counts a coloring with digitCount digits using usedColorCount colors
+	 */
+	public void add(int digitCount,int usedColorCount) {
+		if (digitCount>_maxDigitCount) {
+			setMaxDigitCount(digitCount);
+		}
+		_counts[usedColorCount][digitCount]++;
+	}
+
+	private void setMaxDigitCount(int digitCount) {
+		_maxDigitCount = digitCount;
+		if (digitCount>=_counts[0].length) {
+			for (int c=0; c<=colorCount; c++) {
+				_counts[c] = Arrays.copyOf(_counts[c],digitCount+Partition.BLOCK_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * Counts a coloring by looking at its digits
+	 */
+	public void add(Partition ptn) {
+		int lowestColor = colorCount;
+		for (int d=0; d<ptn.digitCount; d++) {
+			lowestColor = Math.min(lowestColor,ptn.getDigit(d));
+		}
+		add(ptn.digitCount,colorCount-lowestColor);
+	}
+
+	/**
+	 * Adds the counts of another worker to ours
+	 */
+	public void merge(ColoringCount count) {
+		if (count._maxDigitCount>_maxDigitCount) {
+			setMaxDigitCount(count._maxDigitCount);
+		}
+		for (int c=1; c<=colorCount; c++) {
+			for (int d=1; d<=count._maxDigitCount; d++) {
+				_counts[c][d] += count._counts[c][d];
+			}
+		}
+	}
+
+	/**
+	 * Returns the longest length with any AP free coloring, ie W(k,t)-1
+	 */
+	public int getMaxDigitCount() {
+		return _maxDigitCount;
+	}
+
+	/**
+	 * Returns the number of colorings with digitCount digits that were visited
+	 */
+	public long getVisitedCount(int digitCount) {
+		long result = 0;
+		for (int c=1; c<=colorCount && digitCount<=_maxDigitCount; c++) {
+			result += _counts[c][digitCount];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of AP free colorings with digitCount digits, correcting for the normalization if needed
+	 */
+	public long getCount(int digitCount) {
+		if (!normalized) {
+			return getVisitedCount(digitCount);
+		}
+		long result = 0;
+		long permutationCount = 1; // the number of ways of assigning c colors out of colorCount
+		for (int c=1; c<=colorCount && digitCount<=_maxDigitCount; c++) {
+			permutationCount *= colorCount - c + 1;
+			result += permutationCount * _counts[c][digitCount];
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("AP free colorings for W("+colorCount+","+sequenceLength+")\n");
+		result.append(String.format("%8s %20s %20s%n","length","visited","colorings"));
+		for (int d=1; d<=_maxDigitCount; d++) {
+			result.append(String.format("%8d %20d %20d%n",d,getVisitedCount(d),getCount(d)));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,47 @@
+package org.dbaussie.vdw;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * The answer to the decision problem "is W(k,t) > digitCount?" ie does a certificate with digitCount digits exist.
+ * 
+ * A yes answer holds the first certificate found, which has been checked to be free of APs.
+ * A no answer is only given once every subtree of the (normalized) search has been searched to completion,
+ * the number of subtrees and certificates visited are recorded as evidence that the search was exhaustive.
+ * 
+ * @author dbaussie
+ *
+ */
+public class Decision {
+
+	// properties
+	public int colorCount;
+	public int sequenceLength;
+	public int digitCount;
+	public Partition certificate; // a certificate with digitCount digits or null if there is none
+	public int subtreeCount; // the number of initial certificates whose subtrees were searched to completion
+	public long visitedCount; // the number of certificates visited
+	public long duration; // in ms
+
+	public Decision(int colorCount,int sequenceLength,int digitCount) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.digitCount = digitCount;
+	}
+
+	/**
+	 * Returns true if W(k,t) > digitCount
+	 */
+	public boolean isSatisfiable() {
+		return certificate!=null;
+	}
+
+	@Override
+	public String toString() {
+		String result = "W("+colorCount+","+sequenceLength+") > "+digitCount+" ";
+		if (isSatisfiable()) {
+			return result+"yes "+certificate;
+		}
+		return result+"no after exhaustively searching "+subtreeCount+" subtrees and "+visitedCount+" certificates";
+	}
+}
@@ -0,0 +1,387 @@
+package org.dbaussie.vdw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Lower bound hunting: searches for long certificates by stochastic local search instead of exhaustively, for instances
+ * such as W(2,7) or W(3,5) where the exhaustive search can never finish.
+ * 
+ * A number of independent walkers run in parallel, each holding a complete coloring and repeatedly recoloring one term of
+ * a monochromatic AP in the style of WalkSAT: it picks a random monochromatic AP and recolors the term that leaves the fewest
+ * monochromatic APs, or with probability noise a random term with a random color.
+ * Each walker keeps the number of monochromatic APs through every position so scoring or making a change only looks at the
+ * O(n) APs through the position it changes rather than checking the whole coloring.
+ * Once its coloring is free of APs the walker reports it and appends a digit, colored to complete as few APs as possible.
+ * Walkers that fall behind the best certificate found by any walker extend their own coloring until they are ahead again.
+ * 
+ * Every certificate reported is checked with the usual AP checker before it is accepted. The search runs until timeLimit
+ * has passed or every walker has taken stepLimit steps, the result is then -1 and the longest certificate found gives a
+ * lower bound. In decision mode the walkers start at the requested length and stop as soon as one of them finds a
+ * certificate. A single walker with a step limit and no time limit always gives the same certificates for the same seed.
+ * 
+ * @author dbaussie
+ *
+ */
+public class LocalSearchGenerator extends AbstractVdwGenerator {
+
+	// constants
+	final static public String ALGORITHM = "local-search";
+	final static public int CHECK_INTERVAL = 1 << 12; // the number of steps a walker takes between looking at the time and the best certificate
+
+	// properties
+	public int walkerCount = Runtime.getRuntime().availableProcessors();
+	public double noise = 0.3; // the probability of a step recoloring a random term instead of the best one
+	public int timeLimit = 60; // the number of seconds to search for, 0 for no limit
+	public long stepLimit = 0; // the number of steps each walker takes before stopping, 0 for no limit
+	public long seed = 0; // walker i uses seed+i so runs are repeatable given the same timing
+
+	// attributes
+	protected volatile int _bestDigitCount; // the longest certificate found by any walker, written under this
+	protected Partition _bestCertificate;
+	protected volatile boolean _stopped;
+	protected long _deadline;
+
+	static public void main(String[] argv) {
+		Log.enabled = true;
+		int colorCount = argv.length>0 ? Integer.parseInt(argv[0]) : 2;
+		int sequenceLength = argv.length>1 ? Integer.parseInt(argv[1]) : 6;
+		LocalSearchGenerator generator = new LocalSearchGenerator(colorCount,sequenceLength);
+		if (argv.length>2) {
+			generator.timeLimit = Integer.parseInt(argv[2]);
+		}
+		generator.generate();
+		System.out.println("Longest certificate "+generator.getBestCertificate());
+	}
+
+	public LocalSearchGenerator(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength,-1);
+		this.algorithm = ALGORITHM;
+	}
+
+	@Override
+	public void calculate() {
+		_result = -1;
+		_certificate = null;
+		_bestDigitCount = 0;
+		_bestCertificate = null;
+		_stopped = false;
+		_deadline = timeLimit>0 ? System.currentTimeMillis() + timeLimit*1000L : 0;
+		openCertificateWriter();
+		List<Walker> walkerList = new ArrayList<Walker>();
+		List<Thread> threadList = new ArrayList<Thread>();
+		for (int index=0; index<Math.max(1,walkerCount); index++) {
+			Walker walker = new Walker(index,new Random(seed+index));
+			Thread thread = new Thread(walker,"vdw-walker-"+index);
+			thread.setDaemon(true);
+			walkerList.add(walker);
+			threadList.add(thread);
+			thread.start();
+		}
+		_visitedCount = 0;
+		for (int index=0; index<threadList.size(); index++) {
+			try {
+				threadList.get(index).join();
+			} catch (InterruptedException e) {
+				_stopped = true;
+				Thread.currentThread().interrupt();
+			}
+			_visitedCount += walkerList.get(index).stepCount;
+		}
+		closeCertificateWriter();
+		if (_certificate!=null) {
+			setResult(0);
+		} else {
+			System.out.println("    Search limit reached, "+toString()+" > "+_bestDigitCount+" after "+_visitedCount+" steps");
+		}
+	}
+
+	/**
+	 * Returns the number of digits of the longest certificate found by the current or last search
+	 */
+	public int getBestDigitCount() {
+		return _bestDigitCount;
+	}
+
+	/**
+	 * Returns the longest certificate found by the current or last search or null if there is none
+	 */
+	public synchronized Partition getBestCertificate() {
+		return _bestCertificate;
+	}
+
+	/**
+	 * Checks a coloring reported by a walker and records it if it is the longest so far.
+	 * In decision mode a certificate reaching abortDigitCount-1 digits stops every walker.
+	 */
+	protected synchronized void reportCertificate(byte[] colors,int digitCount,int walkerNumber) {
+		if (digitCount<=_bestDigitCount) {
+			return;
+		}
+		APChecker checker = createChecker();
+		Partition ptn = checker.createPartition(digitCount);
+		for (int d=0; d<digitCount; d++) {
+			ptn.setDigitAt(d,colors[d]);
+		}
+		if (checker.checkAnyDigit(ptn,(digitCount-1) / (sequenceLength-1),digitCount)!=-1) {
+			throw new IllegalStateException("Invalid certificate for "+toString()+" > "+digitCount+": "+ptn);
+		}
+		_bestDigitCount = digitCount;
+		_bestCertificate = ptn;
+		long dur = System.currentTimeMillis() - _startTime;
+		System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+" ["+walkerNumber+"]");
+		if (_certificateWriter!=null) {
+			_certificateWriter.add(getLeader(ptn));
+		}
+		if (abortDigitCount>0 && digitCount>=abortDigitCount-1) {
+			_certificate = ptn;
+			_stopped = true;
+		}
+	}
+
+	/**
+	 * One local search over a coloring of its own, whose length only ever grows
+	 */
+	protected class Walker implements Runnable {
+
+		// properties
+		final public int number;
+		public long stepCount;
+
+		// attributes
+		final private Random _random;
+		private byte[] _colors = new byte[Partition.BLOCK_SIZE];
+		private int[] _conflicts = new int[Partition.BLOCK_SIZE]; // the number of monochromatic APs through each position
+		private int[] _conflictList = new int[Partition.BLOCK_SIZE]; // the positions with conflicts, in no particular order
+		private int[] _conflictIndex = new int[Partition.BLOCK_SIZE]; // the index of each position in _conflictList or -1
+		private int _conflictCount; // the number of positions in _conflictList
+		private int[] _uniformCounts = new int[colorCount]; // filled by countUniformAPs
+		private int _apStart; // the monochromatic AP chosen by findRandomAP
+		private int _apDifference;
+		private int _digitCount;
+
+		public Walker(int number,Random random) {
+			this.number = number;
+			_random = random;
+		}
+
+		@Override
+		public void run() {
+			int targetDigitCount = abortDigitCount>0 ? abortDigitCount-1 : sequenceLength;
+			while (_digitCount<targetDigitCount) {
+				appendRandomDigit();
+			}
+			while (!_stopped) {
+				if (_conflictCount==0) {
+					reportCertificate(_colors,_digitCount,number);
+					if (abortDigitCount>0) {
+						return;
+					}
+					appendRandomDigit();
+				} else {
+					step();
+				}
+				if (++stepCount%CHECK_INTERVAL==0) {
+					if ((_deadline>0 && System.currentTimeMillis()>=_deadline) || (stepLimit>0 && stepCount>=stepLimit)) {
+						return;
+					}
+					while (abortDigitCount<=0 && _digitCount<=_bestDigitCount) {
+						appendRandomDigit();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Picks a random monochromatic AP and recolors one of its terms, the one whose recoloring leaves the fewest
+		 * monochromatic APs or with probability noise a random one
+		 */
+		private void step() {
+			findRandomAP(_conflictList[_random.nextInt(_conflictCount)]);
+			int bestPosition = -1;
+			int bestColor = -1;
+			if (_random.nextDouble()<noise) {
+				bestPosition = _apStart + _random.nextInt(sequenceLength)*_apDifference;
+				bestColor = (_colors[bestPosition] + 1 + _random.nextInt(colorCount-1)) % colorCount;
+			} else {
+				int bestDelta = Integer.MAX_VALUE;
+				int tieCount = 0;
+				for (int i=0, position=_apStart; i<sequenceLength; i++, position+=_apDifference) {
+					// every monochromatic AP through the position is broken, those whose other terms all have color c are made
+					countUniformAPs(position);
+					int color = _colors[position];
+					for (int c=0; c<colorCount; c++) {
+						if (c==color) {
+							continue;
+						}
+						int delta = _uniformCounts[c] - _conflicts[position];
+						if (delta<bestDelta) {
+							bestDelta = delta;
+							tieCount = 1;
+						} else if (delta>bestDelta || _random.nextInt(++tieCount)!=0) {
+							continue;
+						}
+						bestPosition = position;
+						bestColor = c;
+					}
+				}
+			}
+			setColor(bestPosition,bestColor);
+		}
+
+		/**
+		 * Chooses one of the monochromatic APs through the position at random, setting _apStart and _apDifference
+		 */
+		private void findRandomAP(int position) {
+			final int span = sequenceLength - 1;
+			int color = _colors[position];
+			int apCount = 0;
+			for (int d=1; d*span<_digitCount; d++) {
+				for (int j=0; j<sequenceLength; j++) {
+					int start = position - j*d;
+					if (start<0) {
+						break;
+					}
+					if (start+span*d<_digitCount && getUniformColor(start,d,position)==color && _random.nextInt(++apCount)==0) {
+						_apStart = start;
+						_apDifference = d;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Counts for each color the APs through the position whose other terms all have that color
+		 */
+		private void countUniformAPs(int position) {
+			Arrays.fill(_uniformCounts,0);
+			final int span = sequenceLength - 1;
+			for (int d=1; d*span<_digitCount; d++) {
+				for (int j=0; j<sequenceLength; j++) {
+					int start = position - j*d;
+					if (start<0) {
+						break;
+					}
+					if (start+span*d>=_digitCount) {
+						continue;
+					}
+					int color = getUniformColor(start,d,position);
+					if (color>=0) {
+						_uniformCounts[color]++;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the color of every term of the AP other than the excluded position if they all have the same color, otherwise -1
+		 */
+		private int getUniformColor(int start,int difference,int excludedPosition) {
+			int color = -1;
+			for (int i=0, p=start; i<sequenceLength; i++, p+=difference) {
+				if (p==excludedPosition) {
+					continue;
+				}
+				if (color==-1) {
+					color = _colors[p];
+				} else if (_colors[p]!=color) {
+					return -1;
+				}
+			}
+			return color;
+		}
+
+		/**
+		 * Recolors the position updating the conflicts of every position on an AP that stops or starts being monochromatic
+		 */
+		private void setColor(int position,int newColor) {
+			int oldColor = _colors[position];
+			final int span = sequenceLength - 1;
+			for (int d=1; d*span<_digitCount; d++) {
+				for (int j=0; j<sequenceLength; j++) {
+					int start = position - j*d;
+					if (start<0) {
+						break;
+					}
+					if (start+span*d>=_digitCount) {
+						continue;
+					}
+					int color = getUniformColor(start,d,position);
+					if (color==oldColor) {
+						addConflicts(start,d,-1);
+					} else if (color==newColor) {
+						addConflicts(start,d,1);
+					}
+				}
+			}
+			_colors[position] = (byte)newColor;
+		}
+
+		/**
+		 * Appends a digit with a random color, counting the APs it completes
+		 */
+		private void appendRandomDigit() {
+			int position = _digitCount;
+			if (position==_colors.length) {
+				int capacity = position + position/2;
+				_colors = Arrays.copyOf(_colors,capacity);
+				_conflicts = Arrays.copyOf(_conflicts,capacity);
+				_conflictList = Arrays.copyOf(_conflictList,capacity);
+				_conflictIndex = Arrays.copyOf(_conflictIndex,capacity);
+			}
+			// give the digit the color completing the fewest APs, ties broken at random
+			final int span = sequenceLength - 1;
+			Arrays.fill(_uniformCounts,0);
+			for (int d=1; d*span<=position; d++) {
+				int color = getUniformColor(position-span*d,d,position);
+				if (color>=0) {
+					_uniformCounts[color]++;
+				}
+			}
+			int color = -1;
+			int tieCount = 0;
+			for (int c=0; c<colorCount; c++) {
+				if (color==-1 || _uniformCounts[c]<_uniformCounts[color]) {
+					color = c;
+					tieCount = 1;
+				} else if (_uniformCounts[c]==_uniformCounts[color] && _random.nextInt(++tieCount)==0) {
+					color = c;
+				}
+			}
+			_colors[position] = (byte)color;
+			_conflicts[position] = 0;
+			_conflictIndex[position] = -1;
+			_digitCount++;
+			for (int d=1; d*span<=position; d++) {
+				int start = position - span*d;
+				if (getUniformColor(start,d,position)==color) {
+					addConflicts(start,d,1);
+				}
+			}
+		}
+
+		private void addConflicts(int start,int difference,int delta) {
+			for (int i=0, p=start; i<sequenceLength; i++, p+=difference) {
+				int conflicts = _conflicts[p] + delta;
+				_conflicts[p] = conflicts;
+				if (conflicts==0) {
+					// swap the last conflicted position into its place
+					int index = _conflictIndex[p];
+					int last = _conflictList[--_conflictCount];
+					_conflictList[index] = last;
+					_conflictIndex[last] = index;
+					_conflictIndex[p] = -1;
+				} else if (conflicts==1 && delta>0) {
+					_conflictIndex[p] = _conflictCount;
+					_conflictList[_conflictCount++] = p;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package org.dbaussie.vdw;
+
+import java.util.Arrays;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Lower bound hunting restricted to palindromes: many of the extremal certificates read the same backwards, and searching
+ * only those fixes two digits per step so the search reaches about twice the depth of the unrestricted one.
+ * 
+ * A palindrome is grown from the center outward, each step adding the same color at both ends. Only its half is kept,
+ * digit j of the half being the one j positions from the center (the two middle digits of an even length being digit 0).
+ * When a pair is added the only new APs are those starting at the new left digit or ending at the new right one, and
+ * reflecting the palindrome turns the first kind into the second, so checking the APs ending at the right digit (which
+ * include those through both new digits) is enough. These are read straight from the half, so a step costs about as
+ * much as the unrestricted search's check of one digit. Colors first appear in descending order outward from the center.
+ * 
+ * The odd and even lengths are searched exhaustively by two threads. Every new longest certificate is checked with the
+ * usual AP checker and recorded (to certificatePath too if set) as an ordinary certificate. The search runs until both
+ * threads have finished or timeLimit has passed. Either way the result is -1 as only a lower bound is known, decide says yes
+ * if a palindrome is long enough (ending the search) and otherwise throws.
+ * 
+ * @author dbaussie
+ *
+ */
+public class PalindromeVdwGenerator extends AbstractVdwGenerator {
+
+	// constants
+	final static public String ALGORITHM = "palindrome";
+	final static public int CHECK_INTERVAL = 1 << 14; // the number of steps between looking at the time
+
+	// properties
+	public int timeLimit = 60; // the number of seconds to search for, 0 for no limit
+
+	// attributes
+	protected volatile int _bestDigitCount; // the longest palindrome found by either thread, written under this
+	protected Partition _bestCertificate;
+	protected volatile boolean _stopped;
+	protected boolean _exhausted;
+	protected long _deadline;
+
+	static public void main(String[] argv) {
+		Log.enabled = true;
+		int colorCount = argv.length>0 ? Integer.parseInt(argv[0]) : 2;
+		int sequenceLength = argv.length>1 ? Integer.parseInt(argv[1]) : 6;
+		PalindromeVdwGenerator generator = new PalindromeVdwGenerator(colorCount,sequenceLength);
+		if (argv.length>2) {
+			generator.timeLimit = Integer.parseInt(argv[2]);
+		}
+		generator.generate();
+		System.out.println("Longest certificate "+generator.getBestCertificate());
+	}
+
+	public PalindromeVdwGenerator(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength,-1);
+		this.algorithm = ALGORITHM;
+	}
+
+	@Override
+	public void calculate() {
+		_result = -1;
+		_certificate = null;
+		_bestDigitCount = 0;
+		_bestCertificate = null;
+		_stopped = false;
+		_deadline = timeLimit>0 ? System.currentTimeMillis() + timeLimit*1000L : 0;
+		openCertificateWriter();
+		long[] visitedCounts = new long[2];
+		Thread[] threads = new Thread[2];
+		for (int parity=0; parity<2; parity++) {
+			final int threadParity = parity;
+			threads[parity] = new Thread(() -> visitedCounts[threadParity] = search(threadParity),"vdw-palindrome-"+(parity==0 ? "odd" : "even"));
+			threads[parity].setDaemon(true);
+			threads[parity].start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				_stopped = true;
+				Thread.currentThread().interrupt();
+			}
+		}
+		_visitedCount = visitedCounts[0] + visitedCounts[1];
+		_exhausted = !_stopped;
+		closeCertificateWriter();
+		if (_certificate!=null) {
+			setResult(0);
+		} else if (_exhausted) {
+			System.out.println("    Longest palindrome "+toString()+" > "+_bestDigitCount+" after "+_visitedCount+" steps");
+		} else {
+			System.out.println("    Time limit reached, "+toString()+" > "+_bestDigitCount+" after "+_visitedCount+" steps");
+		}
+	}
+
+	/**
+	 * Returns the number of digits of the longest certificate found by the current or last search
+	 */
+	public int getBestDigitCount() {
+		return _bestDigitCount;
+	}
+
+	/**
+	 * Returns the longest certificate found by the current or last search or null if there is none
+	 */
+	public synchronized Partition getBestCertificate() {
+		return _bestCertificate;
+	}
+
+	/**
+	 * Returns true if the last search looked at every palindrome, so no palindrome is longer than the best certificate
+	 */
+	public boolean isExhausted() {
+		return _exhausted;
+	}
+
+	/**
+	 * Searches the palindromes of odd (parity 0) or even (parity 1) length depth first, returning the number of steps taken
+	 */
+	protected long search(int parity) {
+		byte[] half = new byte[Partition.BLOCK_SIZE];
+		int[] remainingColors = new int[Partition.BLOCK_SIZE]; // the allowed colors not yet tried for each digit of the half
+		int[] lowestColors = new int[Partition.BLOCK_SIZE]; // the lowest color among the digits of the half before each one
+		final int allColors = (1 << colorCount) - 1;
+		long stepCount = 0;
+		int checkCount = 0;
+		int halfCount = 0; // the number of digits of the half being chosen, including the one at the end
+		lowestColors[0] = colorCount;
+		remainingColors[0] = getAllowedColors(half,0,parity,colorCount,allColors);
+		while (halfCount>=0) {
+			if (++checkCount==CHECK_INTERVAL) {
+				checkCount = 0;
+				if (_deadline>0 && System.currentTimeMillis()>=_deadline) {
+					_stopped = true;
+				}
+				if (_stopped) {
+					break;
+				}
+			}
+			int colors = remainingColors[halfCount];
+			if (colors==0) {
+				halfCount--;
+				continue;
+			}
+			int color = Integer.numberOfTrailingZeros(colors);
+			remainingColors[halfCount] = colors & (colors-1);
+			half[halfCount] = (byte)color;
+			stepCount++;
+			int digitCount = 2*halfCount + 1 + parity;
+			if (digitCount>_bestDigitCount) {
+				reportCertificate(half,halfCount+1,parity);
+			}
+			if (abortDigitCount>0 && digitCount>=abortDigitCount-1) {
+				_stopped = true;
+				break;
+			}
+			halfCount++;
+			if (halfCount>=half.length) {
+				half = Arrays.copyOf(half,half.length+Partition.BLOCK_SIZE);
+				remainingColors = Arrays.copyOf(remainingColors,half.length);
+				lowestColors = Arrays.copyOf(lowestColors,half.length);
+			}
+			lowestColors[halfCount] = Math.min(lowestColors[halfCount-1],color);
+			remainingColors[halfCount] = getAllowedColors(half,halfCount,parity,lowestColors[halfCount],allColors);
+		}
+		return stepCount;
+	}
+
+	/**
+	 * Returns the colors that can be placed at both ends as digit j of the half, ie those completing no AP ending at the
+	 * right end and keeping the colors in descending order of first appearance.
+	 * In coordinates x = 2p-(n-1), which are symmetric about the center, position p holds digit |x|/2 of the half.
+	 */
+	protected int getAllowedColors(byte[] half,int j,int parity,int lowestColor,int allColors) {
+		int forbiddenColors = lowestColor<=1 ? 0 : (1 << (lowestColor-1)) - 1;
+		final int right = 2*j + parity; // the x of the right end
+		final int span = sequenceLength - 1;
+		for (int d=1; span*d<=right; d++) {
+			int apColor = -1;
+			int i = 1;
+			for (; i<=span; i++) {
+				int index = Math.abs(right - 2*i*d) >> 1;
+				if (index==j) {
+					continue; // the left end takes the same color as the right end
+				}
+				if (apColor<0) {
+					apColor = half[index];
+				} else if (half[index]!=apColor) {
+					break;
+				}
+			}
+			if (i>span && apColor>=0) {
+				forbiddenColors |= 1 << apColor;
+				if ((forbiddenColors & allColors)==allColors) {
+					return 0;
+				}
+			}
+		}
+		return ~forbiddenColors & allColors;
+	}
+
+	/**
+	 * Unfolds a palindrome from its half, checks it and records it if it is the longest so far.
+	 * In decision mode a palindrome with at least abortDigitCount-1 digits gives the certificate, cut down to that length.
+	 */
+	protected synchronized void reportCertificate(byte[] half,int halfCount,int parity) {
+		int digitCount = 2*halfCount - 1 + parity;
+		if (digitCount<=_bestDigitCount) {
+			return;
+		}
+		APChecker checker = createChecker();
+		Partition ptn = checker.createPartition(digitCount);
+		for (int p=0; p<digitCount; p++) {
+			ptn.setDigitAt(p,half[Math.abs(2*p-digitCount+1) >> 1]);
+		}
+		if (checker.checkAnyDigit(ptn,(digitCount-1) / (sequenceLength-1),digitCount)!=-1) {
+			throw new IllegalStateException("Invalid certificate for "+toString()+" > "+digitCount+": "+ptn);
+		}
+		_bestDigitCount = digitCount;
+		_bestCertificate = ptn;
+		long dur = System.currentTimeMillis() - _startTime;
+		System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+" ["+(parity==0 ? "odd" : "even")+"]");
+		if (_certificateWriter!=null) {
+			_certificateWriter.add(getLeader(ptn));
+		}
+		if (abortDigitCount>0 && digitCount>=abortDigitCount-1 && _certificate==null) {
+			_certificate = ptn.clone();
+			_certificate.setDigitCount(abortDigitCount-1);
+		}
+	}
+}
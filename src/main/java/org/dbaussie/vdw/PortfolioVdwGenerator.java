@@ -0,0 +1,218 @@
+package org.dbaussie.vdw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.check.ForwardChecker;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.metrics.SearchCounters;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.order.ValueOrdering;
+
+/**
+ * Searches for a long certificate quickly rather than proving W(k,t), with a portfolio of value orderings and restarts.
+ * 
+ * Each of parallelism workers runs its own depth first search over the normalized certificates, trying the allowed colors
+ * of every digit in the order given by its ValueOrdering: worker i uses portfolio[i % portfolio.length] seeded with seed+i.
+ * A worker gives up and starts again from the empty prefix once it has backtracked restartBase times the next term of the
+ * Luby sequence (1,1,2,1,1,2,4,1,...), so with a randomized ordering it samples many parts of the tree instead of
+ * exhausting the first one it enters. With restartBase 0, or an ordering making no random choices, there are no restarts.
+ * Forward checking prunes the searches as in the exhaustive generators if forwardCheckHorizon is set.
+ * 
+ * The search stops when a worker finds a certificate reaching abortDigitCount (eg in decide), when timeLimit runs out, or
+ * when a worker searches the whole tree in one run, which proves the longest certificate found is the longest there is.
+ * As with ThreadedVdwGenerator the result is -1 if time runs out, the longest certificate found then giving a lower bound.
+ * 
+ * @author dbaussie
+ *
+ */
+public class PortfolioVdwGenerator extends ThreadedVdwGenerator {
+
+	// constants
+	final static public String ALGORITHM = "portfolio";
+
+	// properties
+	public String[] portfolio = { ValueOrdering.LEAST_CONSTRAINING, ValueOrdering.RANDOM, ValueOrdering.ASCENDING };
+	public int restartBase = 1 << 10; // the number of backtracks per unit of the Luby sequence, 0 for no restarts
+	public long seed = 0;
+
+	// attributes
+	protected volatile boolean _exhausted; // set when a worker has searched the whole tree
+
+	static public void main(String[] argv) {
+		Log.enabled = true;
+		int colorCount = argv.length>0 ? Integer.parseInt(argv[0]) : 3;
+		int sequenceLength = argv.length>1 ? Integer.parseInt(argv[1]) : 4;
+		PortfolioVdwGenerator generator = new PortfolioVdwGenerator(colorCount,sequenceLength);
+		generator.timeLimit = argv.length>2 ? Integer.parseInt(argv[2]) : 60;
+		generator.generate();
+	}
+
+	public PortfolioVdwGenerator(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength);
+		this.algorithm = ALGORITHM;
+	}
+
+	@Override
+	public void calculate() {
+		_result = -1;
+		_certificate = null;
+		_bestDigitCount = 0;
+		_bestCertificate = null;
+		_cancelled = false;
+		_timedOut = false;
+		_exhausted = false;
+		_deadline = timeLimit>0 ? System.currentTimeMillis() + timeLimit*1000L : 0;
+		_threadCheckers = ThreadLocal.withInitial(this::createChecker);
+		startMetrics();
+		openCertificateWriter();
+		ForkJoinPool pool = this.pool!=null ? this.pool : new ForkJoinPool(parallelism);
+		List<ForkJoinTask<Long>> taskList = new ArrayList<ForkJoinTask<Long>>();
+		for (int index=0; index<Math.max(1,parallelism); index++) {
+			ValueOrdering ordering = ValueOrdering.create(portfolio[index % portfolio.length],colorCount,sequenceLength,seed+index);
+			final int workerNumber = index;
+			taskList.add(pool.submit(() -> search(ordering,workerNumber)));
+		}
+		_visitedCount = 0;
+		for (ForkJoinTask<Long> task : taskList) {
+			_visitedCount += task.join();
+		}
+		if (pool!=this.pool) {
+			pool.shutdown();
+		}
+		_metrics.stop();
+		closeCertificateWriter();
+		if (_certificate!=null) {
+			setResult(0);
+		} else if (_exhausted) {
+			setResult(_bestDigitCount+1);
+		} else {
+			System.out.println("    Time limit reached, "+toString()+" > "+_bestDigitCount);
+		}
+	}
+
+	/**
+	 * Runs one worker's searches until the search is stopped, returning the number of certificates it visited
+	 */
+	protected long search(ValueOrdering ordering,int workerNumber) {
+		APChecker checker = _threadCheckers.get();
+		ForwardChecker forwardChecker = createForwardChecker();
+		SearchCounters counters = new SearchCounters();
+		final int allColors = checker.getAllColors();
+		Partition ptn = checker.createPartition(0);
+		int[] orders = new int[colorCount*Partition.BLOCK_SIZE]; // the colors to try at each position in order
+		int[] orderCounts = new int[Partition.BLOCK_SIZE]; // the number of colors to try at each position
+		int[] orderIndexes = new int[Partition.BLOCK_SIZE]; // the index of the next color to try at each position
+		int[] colors = new int[colorCount];
+		long visitedCount = 0;
+		int nodeCount = 0;
+		for (int restart=1; !_cancelled && !_exhausted; restart++) {
+			long backtrackLimit = restartBase>0 && ordering.isRandomized() ? restartBase * getLubyTerm(restart) : Long.MAX_VALUE;
+			long backtrackCount = 0;
+			checker.reset();
+			if (forwardChecker!=null) {
+				forwardChecker.reset();
+			}
+			int digitCount = 1;
+			ptn.setDigitCount(digitCount);
+			orderCounts[digitCount] = orderColors(checker,ordering,ptn,digitCount,allColors,colors,orders);
+			orderIndexes[digitCount] = 0;
+			while (digitCount>0) {
+				if (++nodeCount==donationInterval) {
+					nodeCount = 0;
+					if (_deadline>0 && System.currentTimeMillis()>=_deadline) {
+						stopSearch();
+					}
+					_metrics.add(counters);
+					if (_cancelled || _exhausted) {
+						return visitedCount;
+					}
+				}
+				int testDigit = colorCount;
+				while (testDigit==colorCount && orderIndexes[digitCount]<orderCounts[digitCount]) {
+					testDigit = orders[digitCount*colorCount+orderIndexes[digitCount]++];
+					if (forwardChecker!=null && !forwardChecker.place(ptn,digitCount-1,testDigit,getPruneLimit(_bestDigitCount))) {
+						testDigit = colorCount;
+					}
+				}
+				if (testDigit<colorCount) {
+					ptn.setLastDigit(testDigit);
+					visitedCount++;
+					counters.visit(digitCount);
+					if (digitCount>_bestDigitCount) {
+						reportCertificate(ptn,digitCount,ordering,workerNumber);
+					}
+					if (abortDigitCount>0 && digitCount>=abortDigitCount-1) {
+						cancelSearch(ptn,digitCount);
+						_metrics.add(counters);
+						return visitedCount;
+					}
+					digitCount++;
+					ptn.setDigitCount(digitCount);
+					if (digitCount>=orderCounts.length) {
+						orderCounts = ensureStackCapacity(orderCounts,digitCount);
+						orderIndexes = ensureStackCapacity(orderIndexes,digitCount);
+						orders = Arrays.copyOf(orders,colorCount*orderCounts.length);
+					}
+					orderCounts[digitCount] = orderColors(checker,ordering,ptn,digitCount,allColors,colors,orders);
+					orderIndexes[digitCount] = 0;
+				} else {
+					digitCount--;
+					counters.backtrackCount++;
+					ptn.setDigitCount(Math.max(digitCount,0));
+					if (++backtrackCount>=backtrackLimit) {
+						break;
+					}
+				}
+			}
+			if (digitCount==0) {
+				// this run backtracked out of every subtree
+				_exhausted = true;
+				Log.log("    Worker ["+workerNumber+"] "+ordering+" searched the whole tree in run "+restart);
+			}
+		}
+		_metrics.add(counters);
+		return visitedCount;
+	}
+
+	/**
+	 * Orders the allowed colors of the last digit, those completing no AP and keeping the colors normalized
+	 */
+	protected int orderColors(APChecker checker,ValueOrdering ordering,Partition ptn,int digitCount,int allColors,int[] colors,int[] orders) {
+		int forbiddenColors = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
+		int count = ordering.orderColors(ptn,digitCount,~forbiddenColors & allColors,colors);
+		System.arraycopy(colors,0,orders,digitCount*colorCount,count);
+		return count;
+	}
+
+	protected synchronized void reportCertificate(Partition ptn,int digitCount,ValueOrdering ordering,int workerNumber) {
+		if (digitCount<=_bestDigitCount) {
+			return;
+		}
+		Partition certificate = getLeader(ptn);
+		recordCertificate(certificate,digitCount);
+		if (_certificateWriter!=null) {
+			_certificateWriter.add(certificate);
+		}
+		long dur = new Date().getTime() - _startTime;
+		System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+" ["+workerNumber+" "+ordering+"]");
+	}
+
+	/**
+	 * Returns the i-th term (from 1) of the Luby sequence 1,1,2,1,1,2,4,1,1,2,1,1,2,4,8,...
+	 */
+	static public long getLubyTerm(int i) {
+		while (true) {
+			int k = 32 - Integer.numberOfLeadingZeros(i); // the smallest k with i <= 2^k-1
+			if (i==(1 << k)-1) {
+				return 1L << (k-1);
+			}
+			i -= (1 << (k-1)) - 1;
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package org.dbaussie.vdw;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Lower bounds from Rabung's power residue colorings, which give the best known bounds for many W(k,t).
+ * 
+ * For a prime p with k dividing p-1 every nonzero x in Z_p is colored by the index of x modulo k, ie by which coset of the
+ * k-th powers it lies in. If no t-AP of Z_p is monochromatic (whatever the color of 0) then repeating the coloring t-1 times
+ * gives a certificate with (t-1)p digits, as only APs with a difference divisible by p can then repeat a residue.
+ * The coloring is multiplicative, multiplying an AP by the inverse of its difference turns it into a run of consecutive
+ * residues and shifts every nonzero color by the same amount. So the coloring is valid if and only if no t consecutive
+ * residues have all their nonzero members the same color, which takes one scan over half the residues (negation shifts
+ * colors too) and usually stops after a few hundred of them. Colors of composites come from their smallest prime factor,
+ * only the primes need a modular power.
+ * 
+ * The primes up to maxPrime are tested in parallel. The extendPrimeCount largest valid primes are then built into certificates,
+ * trying every rotation of the coloring and extending it greedily at both ends, and every certificate is checked with
+ * checkForAPFreenessAnyDigit. The result is -1 as only a lower bound is known, decide says yes if a certificate is long
+ * enough and otherwise throws.
+ * 
+ * @author dbaussie
+ *
+ */
+public class PowerResidueGenerator extends AbstractVdwGenerator {
+
+	// constants
+	final static public String ALGORITHM = "power-residue";
+
+	// properties
+	public int maxPrime = 1000000;
+	public int parallelism = Runtime.getRuntime().availableProcessors();
+	public int extendPrimeCount = 3; // the number of the largest valid primes built into certificates
+
+	// attributes
+	protected int[] _smallestFactors; // the smallest prime factor of every number up to maxPrime
+	protected List<Integer> _validPrimes;
+	protected int _bestDigitCount;
+	protected Partition _bestCertificate;
+	protected int _bestPrime;
+
+	static public void main(String[] argv) {
+		Log.enabled = true;
+		int colorCount = argv.length>0 ? Integer.parseInt(argv[0]) : 2;
+		int sequenceLength = argv.length>1 ? Integer.parseInt(argv[1]) : 7;
+		PowerResidueGenerator generator = new PowerResidueGenerator(colorCount,sequenceLength);
+		if (argv.length>2) {
+			generator.maxPrime = Integer.parseInt(argv[2]);
+		}
+		generator.generate();
+		System.out.println("Longest certificate "+generator.getBestCertificate());
+	}
+
+	public PowerResidueGenerator(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength,-1);
+		this.algorithm = ALGORITHM;
+	}
+
+	@Override
+	public void calculate() {
+		_result = -1;
+		_certificate = null;
+		_bestDigitCount = 0;
+		_bestCertificate = null;
+		_bestPrime = 0;
+		_checker = createChecker();
+		_smallestFactors = getSmallestFactors(maxPrime);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			_validPrimes = pool.submit(() -> IntStream.rangeClosed(sequenceLength+1,maxPrime).parallel()
+					.filter(p -> _smallestFactors[p]==p && isValidPrime(p)).boxed().collect(Collectors.toList())).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("Unable to test the primes for "+toString(),e);
+		} finally {
+			pool.shutdown();
+		}
+		Log.log("    Found "+_validPrimes.size()+" primes up to "+maxPrime+" with power residue colorings free of "+sequenceLength+"-APs: "+_validPrimes);
+		_visitedCount = _validPrimes.size();
+		for (int index=_validPrimes.size()-1; index>=Math.max(0,_validPrimes.size()-extendPrimeCount); index--) {
+			int p = _validPrimes.get(index);
+			Partition ptn = construct(p);
+			System.out.println("    "+toString()+" > "+ptn.digitCount+" from p="+p+" ("+(sequenceLength-1)+"p = "+(sequenceLength-1)*p+")");
+			if (ptn.digitCount>_bestDigitCount) {
+				_bestDigitCount = ptn.digitCount;
+				_bestCertificate = ptn;
+				_bestPrime = p;
+			}
+		}
+		if (abortDigitCount>0 && _bestDigitCount>=abortDigitCount-1) {
+			_certificate = _bestCertificate.clone();
+			_certificate.setDigitCount(abortDigitCount-1);
+			setResult(0);
+		} else {
+			System.out.println("    Lower bound "+toString()+" > "+_bestDigitCount+(_bestPrime>0 ? " from p="+_bestPrime : ""));
+		}
+	}
+
+	/**
+	 * Returns the primes whose power residue colorings are free of APs found by the current or last search, in ascending order
+	 */
+	public List<Integer> getValidPrimes() {
+		return _validPrimes;
+	}
+
+	/**
+	 * Returns the number of digits of the longest certificate built by the current or last search
+	 */
+	public int getBestDigitCount() {
+		return _bestDigitCount;
+	}
+
+	/**
+	 * Returns the longest certificate built by the current or last search or null if there is none
+	 */
+	public Partition getBestCertificate() {
+		return _bestCertificate;
+	}
+
+	/**
+	 * Returns true if the power residue coloring of Z_p has no monochromatic AP with sequenceLength terms
+	 */
+	public boolean isValidPrime(int p) {
+		if ((p-1) % colorCount!=0 || p<=sequenceLength) {
+			return false;
+		}
+		long[] roots = getRoots(p);
+		if (roots==null) {
+			return false;
+		}
+		// the runs around 0 are made of -j..-1 and 1..t-1-j, the color of -x being the color of -1 plus that of x
+		int[] colors = new int[sequenceLength];
+		for (int x=1; x<sequenceLength; x++) {
+			colors[x] = getColor(p,x,roots,colors);
+		}
+		int minusColor = getColor(p,p-1,roots,colors);
+		for (int j=1; j<sequenceLength; j++) {
+			int color = (minusColor + colors[1]) % colorCount;
+			boolean uniform = true;
+			for (int x=1; x<=j && uniform; x++) {
+				uniform = (minusColor + colors[x]) % colorCount==color;
+			}
+			for (int x=1; x<sequenceLength-j && uniform; x++) {
+				uniform = colors[x]==color;
+			}
+			if (uniform) {
+				return false;
+			}
+		}
+		// the runs in 1..p-1 that start in the lower half, the others are their negations
+		int limit = Math.min(p-1,(p+sequenceLength)/2);
+		colors = new int[Math.min(limit+1,1024)];
+		int runLength = 0;
+		int runColor = -1;
+		for (int x=1; x<=limit; x++) {
+			if (x==colors.length) {
+				colors = Arrays.copyOf(colors,Math.min(limit+1,2*colors.length));
+			}
+			int color = getColor(p,x,roots,colors);
+			colors[x] = color;
+			runLength = color==runColor ? runLength+1 : 1;
+			runColor = color;
+			if (runLength>=sequenceLength) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the longest certificate from the coloring of Z_p over every rotation of (t-1) periods, extended greedily at both
+	 * ends, and checks it. Returns null if the prime is not valid.
+	 */
+	public Partition construct(int p) {
+		if (!isValidPrime(p)) {
+			return null;
+		}
+		long[] roots = getRoots(p);
+		int[] colors = new int[p];
+		if (_smallestFactors==null || _smallestFactors.length<p) {
+			_smallestFactors = getSmallestFactors(p);
+		}
+		for (int x=1; x<p; x++) {
+			colors[x] = getColor(p,x,roots,colors);
+		}
+		APChecker checker = createChecker();
+		int baseDigitCount = (sequenceLength-1) * p;
+		Partition best = null;
+		for (int offset=0; offset<p; offset++) {
+			Partition ptn = checker.createPartition(baseDigitCount);
+			for (int d=0; d<baseDigitCount; d++) {
+				ptn.setDigitAt(d,colors[(offset+d) % p]);
+			}
+			ptn = extend(checker,reverse(checker,extend(checker,ptn)));
+			if (best==null || ptn.digitCount>best.digitCount) {
+				best = ptn;
+			}
+		}
+		int digitCount = best.digitCount;
+		if (_checker==null) {
+			_checker = createChecker();
+		}
+		if (checkForAPFreenessAnyDigit(best,(digitCount-1) / (sequenceLength-1),digitCount)!=-1) {
+			throw new IllegalStateException("Invalid certificate for "+toString()+" > "+digitCount+" from p="+p+": "+best);
+		}
+		return best;
+	}
+
+	/**
+	 * Appends the lowest allowed color for as long as there is one
+	 */
+	protected Partition extend(APChecker checker,Partition ptn) {
+		checker.reset();
+		while (true) {
+			int digitCount = ptn.digitCount + 1;
+			ptn.setDigitCount(digitCount);
+			int forbiddenColors = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount);
+			int color = nextAllowedColor(forbiddenColors,0);
+			if (color>=colorCount) {
+				ptn.setDigitCount(digitCount-1);
+				return ptn;
+			}
+			ptn.setLastDigit(color);
+		}
+	}
+
+	protected Partition reverse(APChecker checker,Partition ptn) {
+		int digitCount = ptn.digitCount;
+		Partition reverse = checker.createPartition(digitCount);
+		for (int d=0; d<digitCount; d++) {
+			reverse.setDigitAt(d,ptn.getDigit(digitCount-1-d));
+		}
+		return reverse;
+	}
+
+	/**
+	 * Returns the powers of a primitive k-th root of unity mod p, whose exponents are the colors, or null if k does not divide p-1
+	 */
+	protected long[] getRoots(int p) {
+		if ((p-1) % colorCount!=0) {
+			return null;
+		}
+		long exponent = (p-1) / colorCount;
+		for (int g=2; g<p; g++) {
+			long root = power(g,exponent,p);
+			long[] roots = new long[colorCount];
+			roots[0] = 1;
+			boolean primitive = true;
+			for (int i=1; i<colorCount && primitive; i++) {
+				roots[i] = roots[i-1] * root % p;
+				primitive = roots[i]!=1;
+			}
+			if (primitive) {
+				return roots;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the color of x in Z_p, given the colors of every smaller number whose color has already been worked out.
+	 * Composites within the factor table (if it has been sieved) are colored from their smallest prime factor as the coloring
+	 * is multiplicative.
+	 */
+	protected int getColor(int p,int x,long[] roots,int[] colors) {
+		if (x==1) {
+			return 0;
+		}
+		if (_smallestFactors!=null && x<_smallestFactors.length && x<colors.length) {
+			int factor = _smallestFactors[x];
+			if (factor!=x && x/factor<colors.length) {
+				return (colors[factor] + colors[x/factor]) % colorCount;
+			}
+		}
+		long residue = power(x,(p-1) / colorCount,p);
+		for (int color=0; color<colorCount; color++) {
+			if (roots[color]==residue) {
+				return color;
+			}
+		}
+		throw new IllegalStateException(x+" has no color mod "+p);
+	}
+
+	static protected long power(long base,long exponent,long modulus) {
+		long result = 1;
+		base %= modulus;
+		while (exponent>0) {
+			if ((exponent & 1)!=0) {
+				result = result * base % modulus;
+			}
+			base = base * base % modulus;
+			exponent >>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Sieves the smallest prime factor of every number up to max, so n is prime if it is its own smallest factor
+	 */
+	static public int[] getSmallestFactors(int max) {
+		int[] factors = new int[max+1];
+		for (int n=2; n<=max; n++) {
+			if (factors[n]==0) {
+				for (long m=n; m<=max; m+=n) {
+					if (factors[(int)m]==0) {
+						factors[(int)m] = n;
+					}
+				}
+			}
+		}
+		return factors;
+	}
+}
@@ -0,0 +1,154 @@
+package org.dbaussie.vdw;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Enumerates the AP free prefixes of a given length lazily, in the same (ascending) order as the search visits them.
+ * 
+ * The prefixes are found by a depth first search which only checks the newest digit against the digits before it and
+ * applies the generator's symmetry breaking as it goes, so a prefix of a non normalized or non AP free prefix is never
+ * extended. The work is proportional to the number of AP free prefixes rather than colorCount^prefixLength and only
+ * the search stack is held in memory, each prefix being cloned as it is handed out.
+ * 
+ * Splitting divides the untried subtrees between the two spliterators, each with its own checker, so a parallel stream
+ * enumerates different subtrees on different threads.
+ * 
+ * @author dbaussie
+ *
+ */
+public class PrefixSpliterator implements Spliterator<Partition> {
+
+	// properties
+	final public int prefixLength;
+
+	// attributes
+	protected AbstractVdwGenerator _generator;
+	protected APChecker _checker;
+	protected Partition _ptn; // the digits of the current position, the digit at _digitCount-1 is the one being chosen
+	protected int _rootLength; // the number of leading digits this spliterator does not vary
+	protected int _digitCount;
+	protected int[] _remainingColors; // the allowed colors not yet tried at each digit count
+
+	/**
+	 * Creates a spliterator over all prefixes of the given length
+	 */
+	public PrefixSpliterator(AbstractVdwGenerator generator,int prefixLength) {
+		_generator = generator;
+		_checker = generator.createChecker();
+		this.prefixLength = prefixLength;
+		_ptn = _checker.createPartition(0);
+		_rootLength = 0;
+		_remainingColors = new int[prefixLength+1];
+		_digitCount = 1;
+		if (prefixLength>0) {
+			_ptn.setDigitCount(1);
+			_remainingColors[1] = getAllowedColors();
+		}
+	}
+
+	/**
+	 * Creates a spliterator over the prefixes below the first rootLength digits of ptn,
+	 * the digit after them taking one of the given colors
+	 */
+	protected PrefixSpliterator(PrefixSpliterator spliterator,Partition ptn,int rootLength,int remainingColors) {
+		_generator = spliterator._generator;
+		_checker = _generator.createChecker();
+		this.prefixLength = spliterator.prefixLength;
+		_ptn = ptn;
+		_rootLength = rootLength;
+		_remainingColors = new int[prefixLength+1];
+		_digitCount = rootLength + 1;
+		_remainingColors[_digitCount] = remainingColors;
+	}
+
+	/**
+	 * Returns the colors for the last of the first _digitCount digits that complete no AP and keep the symmetry breaking
+	 */
+	protected int getAllowedColors() {
+		int forbiddenColors = _checker.getForbiddenColors(_ptn,(_digitCount-1) / (_generator.sequenceLength-1),_digitCount) | _generator.getSymmetryColors(_ptn,_digitCount);
+		return ~forbiddenColors & _checker.getAllColors();
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Partition> action) {
+		while (_digitCount>_rootLength && prefixLength>0) {
+			int remainingColors = _remainingColors[_digitCount];
+			if (remainingColors==0) {
+				_digitCount--;
+				continue;
+			}
+			_remainingColors[_digitCount] = remainingColors & (remainingColors-1);
+			_ptn.setDigitCount(_digitCount);
+			_ptn.setLastDigit(Integer.numberOfTrailingZeros(remainingColors));
+			if (_digitCount==prefixLength) {
+				action.accept(_ptn.clone());
+				return true;
+			}
+			_digitCount++;
+			_ptn.setDigitCount(_digitCount);
+			_remainingColors[_digitCount] = getAllowedColors();
+		}
+		return false;
+	}
+
+	/**
+	 * Splits at the shallowest level with untried colors. If there is a deeper position this spliterator keeps the untried
+	 * colors and hands everything below the position to the new spliterator, which comes first in the encounter order,
+	 * otherwise the new spliterator takes the lower half of the untried colors.
+	 * While there is only one way forward the search descends first so that even a new spliterator can be split.
+	 */
+	@Override
+	public Spliterator<Partition> trySplit() {
+		while (_digitCount>_rootLength && prefixLength>0) {
+			int splitDigitCount = _rootLength + 1;
+			while (splitDigitCount<_digitCount && _remainingColors[splitDigitCount]==0) {
+				splitDigitCount++;
+			}
+			int remainingColors = _remainingColors[splitDigitCount];
+			if (splitDigitCount<_digitCount) {
+				PrefixSpliterator result = new PrefixSpliterator(this,_ptn.clone(),splitDigitCount,0);
+				result._digitCount = _digitCount;
+				result._remainingColors = Arrays.copyOf(_remainingColors,_remainingColors.length);
+				result._remainingColors[splitDigitCount] = 0;
+				_rootLength = splitDigitCount - 1;
+				_digitCount = splitDigitCount;
+				return result;
+			}
+			int count = Integer.bitCount(remainingColors);
+			if (count>=2) {
+				int lowerColors = 0;
+				for (int i=0; i<count/2; i++) {
+					lowerColors |= Integer.lowestOneBit(remainingColors & ~lowerColors);
+				}
+				_remainingColors[_digitCount] = remainingColors & ~lowerColors;
+				_rootLength = _digitCount - 1;
+				return new PrefixSpliterator(this,_ptn.clone(),_rootLength,lowerColors);
+			}
+			if (count==0 || _digitCount==prefixLength) {
+				return null;
+			}
+			_remainingColors[_digitCount] = 0;
+			_ptn.setDigitCount(_digitCount);
+			_ptn.setLastDigit(Integer.numberOfTrailingZeros(remainingColors));
+			_digitCount++;
+			_ptn.setDigitCount(_digitCount);
+			_remainingColors[_digitCount] = getAllowedColors();
+		}
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | NONNULL;
+	}
+}
@@ -1,29 +1,119 @@
 package org.dbaussie.vdw;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.check.ForwardChecker;
+import org.dbaussie.vdw.checkpoint.Checkpoint;
+import org.dbaussie.vdw.checkpoint.CheckpointFile;
+import org.dbaussie.vdw.checkpoint.SearchFrontier;
 import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.metrics.SearchCounters;
 import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.PrefixCache;
 
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
-
+/**
+ * Multi-threaded version of the generator which searches the initial certificates on a work stealing ForkJoinPool.
+ * 
+ * The pool is limited to parallelism threads (by default one per core) and starts with one task per initial certificate,
+ * submitted in order of decreasing estimated subtree size.
+ * Because a few certificates hold most of the search tree, busy tasks periodically check whether other workers are
+ * running out of work and if so donate the shallowest unexplored sibling subtree on their backtracking stack as a new task.
+ * A donated subtree is simply marked as forbidden in the donor's stack so neither the donor nor anyone else searches it twice.
+ * When abortDigitCount is set (eg by decide) the first task to reach it cancels all the others.
+ * 
+ * If checkpointPath is set the search can survive a restart. Every task publishes an immutable SearchFrontier when asked to
+ * (a volatile write checked at the same interval as donations) and a background thread periodically writes the frontiers of
+ * all unfinished tasks, together with the best certificate so far, to a memory mapped CheckpointFile.
+ * A new run with the same checkpointPath resumes from the most recent checkpoint.
+ * No checkpoints are written by a decision with forward checking, as it prunes subtrees holding certificates longer than
+ * the best so far and a full search resuming from its frontiers would give the wrong answer.
+ * 
+ * If a PrefixCache is given, every task whose subtree (including its donations) is searched to completion records its
+ * prefix and longest certificate there, and a task whose prefix (or a prefix of it) is already in the cache returns the
+ * cached result without searching. Nothing is recorded with forward checking as its subtrees are pruned rather than
+ * exhausted, and nothing is skipped when counting or recording certificates as they need every certificate visited.
+ * 
+ * With thousands of initial certificates (a large initialDigitCount) holding and estimating them all up front costs more
+ * than it saves, so if prefixWindow is set they are instead streamed from a PrefixSpliterator into the pool a window
+ * at a time (see searchStreamed).
+ * 
+ * The search normally creates its own pool, but can instead run on a shared pool (eg one pool for a whole SweepRunner) which it
+ * leaves running. If timeLimit is set the tasks stop at the first donation check after it has passed, the result is then -1
+ * and the longest certificate found so far only gives a lower bound.
+ * 
+ * @author dbaussie
+ *
+ */
 public class ThreadedVdwGenerator extends VdwGenerator {
 
 	// constants
 	final static public String ALGORITHM = "normalized-prefix-mt";
 
+	// properties
+	public int parallelism = Runtime.getRuntime().availableProcessors();
+	public int donationInterval = 1 << 14; // the number of nodes visited between checks for idle workers, which also update the metrics
+	public String checkpointPath; // if set the search state is saved to checkpointPath.0/.1 and resumed from there
+	public int checkpointInterval = 60; // the number of seconds between checkpoints
+	public ForkJoinPool pool; // if set search on this shared pool and leave it running, otherwise on a new pool of parallelism threads
+	public int timeLimit = 0; // the number of seconds after which the search is stopped, 0 for no limit
+	public PrefixCache prefixCache; // if set exhausted subtrees are recorded to and skipped using this cache, which may be shared
+	public int prefixWindow = 0; // if positive the initial certificates are enumerated as the search runs with at most this many tasks waiting or running, see searchStreamed
+
+	// attributes
+	protected ThreadLocal<APChecker> _threadCheckers;
+	protected ThreadLocal<ForwardChecker> _threadForwardCheckers; // null entries when forward checking is switched off
+	protected CheckpointFile _checkpointFile;
+	protected Set<SearchTask> _liveTasks; // the tasks that have not finished their own search, guarded by itself
+	protected volatile int _checkpointGeneration; // incremented to ask every task to publish a new frontier
+	protected volatile boolean _cancelled; // set to stop every task once a certificate reaching abortDigitCount is found or time runs out
+	protected volatile boolean _timedOut; // set if the search was stopped by the time limit
+	protected long _deadline; // the time in ms when the search is stopped or 0 for no limit
+	protected int _streamedCount; // the number of initial certificates enumerated by searchStreamed
+	protected AtomicInteger _cachedTaskCount = new AtomicInteger(); // the number of tasks whose result was found in the prefix cache
+	protected volatile int _bestDigitCount; // the best certificate found by any task, written under this
+	protected Partition _bestCertificate;
+	protected ThreadLocal<SearchCounters> _threadCounters; // added to the metrics at every donation check
+	protected ThreadLocal<ColoringCount> _threadColoringCounts; // null unless counting
+	protected List<ColoringCount> _coloringCounts; // every worker's coloring count, guarded by itself
+
 	static public void main(String[] argv) {
 		Log.enabled = true;
-		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(2,5,-1);
+		int colorCount = argv.length>0 ? Integer.parseInt(argv[0]) : 2;
+		int sequenceLength = argv.length>1 ? Integer.parseInt(argv[1]) : 5;
+		int initialCount = argv.length>2 ? Integer.parseInt(argv[2]) : -1;
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(colorCount,sequenceLength,initialCount);
+		if (argv.length>3) {
+			try {
+				generator.prefixCache = new PrefixCache(argv[3]);
+			} catch (IOException e) {
+				System.out.println("    Unable to open prefix cache "+argv[3]+": "+e);
+			}
+		}
 		generator.generate();
+		if (generator.prefixCache!=null) {
+			try {
+				generator.prefixCache.close();
+			} catch (IOException e) {
+				System.out.println("    Unable to close prefix cache "+argv[3]+": "+e);
+			}
+		}
 		//System.exit(0);
 	}
 
@@ -38,98 +128,510 @@ public class ThreadedVdwGenerator extends VdwGenerator {
 
 	@Override
 	public void calculate() {
-		boolean foundAnyCert = initialize();
-		if (!foundAnyCert) {
-			setResult(0);
-			return;
+		_liveTasks = new HashSet<SearchTask>();
+		_estimatedCount = 0;
+		_bestDigitCount = 0;
+		_bestCertificate = null;
+		_certificate = null;
+		_subtreeCount = 0;
+		_cancelled = false;
+		_timedOut = false;
+		_cachedTaskCount.set(0);
+		_deadline = timeLimit>0 ? System.currentTimeMillis() + timeLimit*1000L : 0;
+		List<SearchTask> taskList = new ArrayList<SearchTask>();
+		Checkpoint checkpoint = readCheckpoint();
+		if (checkpoint!=null) {
+			_result = -1;
+			_checker = createChecker();
+			_bestDigitCount = checkpoint.bestDigitCount;
+			_bestCertificate = _checker.createPartition(checkpoint.bestDigits.length);
+			for (int d=0; d<checkpoint.bestDigits.length; d++) {
+				_bestCertificate.setDigitAt(d,checkpoint.bestDigits[d]);
+			}
+			System.out.println("    Resuming "+toString()+" > "+_bestDigitCount+" with "+checkpoint.frontierList.size()+" unfinished tasks");
+			for (SearchFrontier frontier : checkpoint.frontierList) {
+				Partition ptn = _checker.createPartition(frontier.digitCount);
+				frontier.restoreDigits(ptn);
+				taskList.add(new SearchTask(ptn,frontier));
+			}
+		} else if (isStreamed()) {
+			// the initial certificates are enumerated and searched in searchStreamed
+			_result = -1;
+			_checker = createChecker();
+		} else {
+			boolean foundAnyCert = initialize();
+			if (!foundAnyCert) {
+				setResult(0);
+				return;
+			}
+			estimateInitialCertificates();
+			int index = 0;
+			for (Partition ptn : _initialCertificates) {
+				taskList.add(new SearchTask(ptn,initialDigitCount,index));
+				index++;
+			}
+			// start the biggest subtrees first so they are not left running alone at the end
+			taskList.sort(Comparator.comparingDouble(task -> -_estimates[task._threadNumber]));
 		}
-		ListeningExecutorService les = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
-		LinkedList<Callable<ThreadData>> callList = new LinkedList<Callable<ThreadData>>();
-		int index = 0;
-		for (Partition ptn : _initialCertificates) {
-			final int tn = index;
-			final Partition p = ptn;
-			Callable<ThreadData> c = () -> {
-				return calculatePartiton(p,tn);
-			};
-			index++;
-			callList.add(c);
+		// a task always runs to completion on one worker before joining its donations so checkers can be shared per thread
+		_threadCheckers = ThreadLocal.withInitial(this::createChecker);
+		_threadForwardCheckers = ThreadLocal.withInitial(this::createForwardChecker);
+		_threadCounters = ThreadLocal.withInitial(SearchCounters::new);
+		startMetrics();
+		openCertificateWriter();
+		ForkJoinPool pool = this.pool!=null ? this.pool : new ForkJoinPool(parallelism);
+		for (SearchTask task : taskList) {
+			registerTask(task);
+			pool.execute(task);
 		}
+		ScheduledExecutorService checkpointer = startCheckpointing();
 		try {
-			@SuppressWarnings({"unchecked","rawtypes"})
-			List<ListenableFuture<ThreadData>> resultList = (List)les.invokeAll(callList);
-			for (ListenableFuture<ThreadData> lf : resultList) {
-				Futures.addCallback(lf,new FutureCallback<ThreadData>() {
-					public void onSuccess(ThreadData td) {
-						System.out.println("Thread ["+td.threadNumber+"] result="+td.result+" certificates="+td.certCount+" ptn="+td.ptn);
-					}
-					public void onFailure(Throwable thrown) {
-					}
-				},les);
+			int result = checkpoint!=null ? checkpoint.bestDigitCount : -1;
+			int subtreeCount = taskList.size();
+			_visitedCount = 0;
+			if (checkpoint==null && isStreamed()) {
+				ThreadData td = searchStreamed(pool);
+				_visitedCount = td.certCount;
+				result = td.result;
+				subtreeCount = _streamedCount;
 			}
-			int result = -1;
-			for (ListenableFuture<ThreadData> f : resultList) {
-				if (f.get().result>result) {
-					result = f.get().result;
+			for (SearchTask task : taskList) {
+				ThreadData td = task.get();
+				_visitedCount += td.certCount;
+				System.out.println("Thread ["+td.threadNumber+"] result="+td.result+" certificates="+td.certCount+" tasks="+td.taskCount+" ptn="+td.ptn);
+				if (td.result>result) {
+					result = td.result;
 				}
 			}
-			setResult(result+1);
+			if (_certificate!=null) {
+				setResult(0);
+			} else if (_timedOut) {
+				System.out.println("    Time limit reached, "+toString()+" > "+_bestDigitCount);
+				setResult(-1);
+			} else {
+				_subtreeCount = subtreeCount;
+				setResult(result+1);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		les.shutdown();
+		if (pool!=this.pool) {
+			pool.shutdown();
+		}
+		if (_cachedTaskCount.get()>0) {
+			Log.log("    Skipped "+_cachedTaskCount.get()+" subtrees found in the prefix cache");
+		}
+		_metrics.stop();
+		closeCertificateWriter();
+		if (checkpointer!=null) {
+			checkpointer.shutdownNow();
+		}
+		if (checkpointer!=null && !_cancelled) {
+			// with no unfinished tasks the final checkpoint records the answer
+			writeCheckpoint();
+		}
+	}
+
+	/**
+	 * Returns true if the initial certificates are to be streamed, which needs prefixWindow set and no checkpointing
+	 * as a checkpoint must list every unfinished task
+	 */
+	protected boolean isStreamed() {
+		return prefixWindow>0 && checkpointPath==null;
+	}
+
+	/**
+	 * Searches the initial certificates as they are enumerated by a PrefixSpliterator, with at most prefixWindow tasks
+	 * waiting or running at once so only those prefixes are ever held in memory. This allows far more initial certificates
+	 * than the usual list, at the cost of not estimating the subtrees (or starting the biggest first) and of checkpointing.
+	 * Returns the results of all the tasks combined.
+	 */
+	protected ThreadData searchStreamed(ForkJoinPool pool) {
+		ThreadData result = new ThreadData();
+		result.result = -1;
+		result.taskCount = 0;
+		Semaphore window = new Semaphore(prefixWindow);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Spliterator<Partition> prefixes = new PrefixSpliterator(this,initialDigitCount);
+		Partition[] prefix = new Partition[1];
+		int index = 0;
+		while (!_cancelled && failure.get()==null && prefixes.tryAdvance(ptn -> prefix[0] = ptn)) {
+			SearchTask task = new SearchTask(prefix[0],initialDigitCount,index++);
+			window.acquireUninterruptibly();
+			registerTask(task);
+			pool.execute(ForkJoinTask.adapt(() -> {
+				try {
+					ThreadData td = task.invoke();
+					synchronized (result) {
+						result.merge(td);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null,e);
+				} finally {
+					window.release();
+				}
+			}));
+		}
+		window.acquireUninterruptibly(prefixWindow);
+		if (failure.get()!=null) {
+			throw new IllegalStateException("Search of "+toString()+" failed",failure.get());
+		}
+		Log.log("    Searched "+index+" initial certificates as they were enumerated");
+		_streamedCount = index;
+		return result;
+	}
+
+	/**
+	 * Runs the probes on the shared pool if there is one so that they keep to its parallelism
+	 */
+	@Override
+	protected void estimateInitialCertificates() {
+		if (pool==null) {
+			super.estimateInitialCertificates();
+		} else {
+			pool.submit(() -> super.estimateInitialCertificates()).join();
+		}
+	}
+
+	/**
+	 * Returns the number of digits of the longest certificate found so far by the current or last search
+	 */
+	public int getBestDigitCount() {
+		return _bestDigitCount;
+	}
+
+	/**
+	 * Returns true if the last search was stopped by the time limit before it was exhausted
+	 */
+	public boolean isTimedOut() {
+		return _timedOut;
+	}
+
+	/**
+	 * Opens the checkpoint file if checkpointing is enabled and returns its latest checkpoint if it belongs to this instance
+	 */
+	protected Checkpoint readCheckpoint() {
+		_checkpointFile = null;
+		if (checkpointPath==null) {
+			return null;
+		}
+		_checkpointFile = new CheckpointFile(checkpointPath);
+		Checkpoint checkpoint = _checkpointFile.read();
+		if (checkpoint!=null && !checkpoint.matches(colorCount,sequenceLength,initialDigitCount)) {
+			Log.log("    Ignoring checkpoint "+checkpointPath+" as it belongs to a different instance");
+			return null;
+		}
+		return checkpoint;
+	}
+
+	protected ScheduledExecutorService startCheckpointing() {
+		if (_checkpointFile==null || (forwardCheckHorizon>0 && abortDigitCount>0)) {
+			return null;
+		}
+		ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r,"vdw-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkpointer.scheduleWithFixedDelay(() -> {
+			writeCheckpoint();
+			// ask for fresh frontiers for the next checkpoint
+			_checkpointGeneration++;
+		},checkpointInterval,checkpointInterval,TimeUnit.SECONDS);
+		return checkpointer;
+	}
+
+	/**
+	 * Writes the latest published frontier of every unfinished task.
+	 * A donor always registers a donated task before publishing a frontier that excludes it, and registration cannot
+	 * happen while we are collecting frontiers, so a donated subtree is never missing from a checkpoint
+	 * (at worst it is searched twice after a resume).
+	 */
+	protected void writeCheckpoint() {
+		Checkpoint checkpoint = new Checkpoint(colorCount,sequenceLength,initialDigitCount);
+		synchronized (this) {
+			checkpoint.bestDigitCount = _bestDigitCount;
+			if (_bestCertificate!=null) {
+				checkpoint.bestDigits = SearchFrontier.create(0,0,_bestCertificate,_bestCertificate.digitCount,null).digits;
+			}
+		}
+		synchronized (_liveTasks) {
+			for (SearchTask task : _liveTasks) {
+				checkpoint.frontierList.add(task._frontier);
+			}
+		}
+		try {
+			_checkpointFile.write(checkpoint);
+			Log.log("    Checkpoint written with "+checkpoint.frontierList.size()+" unfinished tasks");
+		} catch (IOException e) {
+			System.out.println("    Unable to write checkpoint "+checkpointPath+": "+e);
+		}
+	}
+
+	/**
+	 * Counting mode: counts the AP free colorings of every length in a single exhaustive search, which also finds W(k,t).
+	 * Every worker counts the colorings it visits into its own ColoringCount and these are merged at the end. The colorings
+	 * no longer than the initial certificates are counted separately. Forward checking and checkpointing are switched off
+	 * for the search as they would skip or lose colorings.
+	 */
+	public ColoringCount count() {
+		int oldForwardCheckHorizon = forwardCheckHorizon;
+		int oldAbortDigitCount = abortDigitCount;
+		String oldCheckpointPath = checkpointPath;
+		forwardCheckHorizon = 0;
+		abortDigitCount = -1;
+		checkpointPath = null;
+		_startTime = new Date().getTime();
+		_coloringCounts = new ArrayList<ColoringCount>();
+		_threadColoringCounts = ThreadLocal.withInitial(() -> {
+			ColoringCount count = new ColoringCount(colorCount,sequenceLength,useNormalization);
+			synchronized (_coloringCounts) {
+				_coloringCounts.add(count);
+			}
+			return count;
+		});
+		try {
+			calculate();
+		} finally {
+			forwardCheckHorizon = oldForwardCheckHorizon;
+			abortDigitCount = oldAbortDigitCount;
+			checkpointPath = oldCheckpointPath;
+			_threadColoringCounts = null;
+		}
+		ColoringCount result = new ColoringCount(colorCount,sequenceLength,useNormalization);
+		for (ColoringCount count : _coloringCounts) {
+			result.merge(count);
+		}
+		APChecker checker = createChecker();
+		countPrefixes(checker,checker.createPartition(0),result);
+		result.duration = new Date().getTime() - _startTime;
+		return result;
+	}
+
+	/**
+	 * Counts the (normalized) AP free extensions of a prefix up to initialDigitCount digits
+	 */
+	protected void countPrefixes(APChecker checker,Partition ptn,ColoringCount count) {
+		int digitCount = ptn.digitCount + 1;
+		if (digitCount>initialDigitCount) {
+			return;
+		}
+		ptn.setDigitCount(digitCount);
+		int forbiddenColors = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
+		for (int color=nextAllowedColor(forbiddenColors,0); color<colorCount; color=nextAllowedColor(forbiddenColors,color+1)) {
+			ptn.setDigitAt(digitCount-1,color);
+			count.add(ptn);
+			countPrefixes(checker,ptn,count);
+			ptn.setDigitCount(digitCount);
+		}
+		ptn.setDigitCount(digitCount-1);
+	}
+
+	protected void registerTask(SearchTask task) {
+		synchronized (_liveTasks) {
+			_liveTasks.add(task);
+		}
+	}
+
+	protected void unregisterTask(SearchTask task) {
+		synchronized (_liveTasks) {
+			_liveTasks.remove(task);
+		}
 	}
 
-	protected ThreadData calculatePartiton(Partition ptn,int threadNumber) {
+	/**
+	 * Returns the result of a task from the prefix cache if its subtree, or a subtree containing it, has been searched
+	 * before, otherwise null. A cached certificate long enough for decide ends the search as if the task had found it.
+	 */
+	protected ThreadData findCachedResult(SearchTask task) {
+		if (prefixCache==null || _threadColoringCounts!=null || _certificateWriter!=null) {
+			return null;
+		}
+		PrefixCache.Entry entry = prefixCache.find(task._ptn,task._prefixLength,sequenceLength);
+		if (entry==null) {
+			return null;
+		}
+		_cachedTaskCount.incrementAndGet();
+		ThreadData td = new ThreadData();
+		td.threadNumber = task._threadNumber;
+		td.result = entry.maxDigitCount;
+		td.ptn = task._ptn;
+		if (entry.maxDigitCount>0) {
+			td.ptn = _threadCheckers.get().createPartition(entry.certificate.length);
+			entry.restoreCertificate(td.ptn);
+			recordCertificate(td.ptn,entry.maxDigitCount);
+			if (abortDigitCount>0 && entry.maxDigitCount>=abortDigitCount-1) {
+				cancelSearch(td.ptn,abortDigitCount-1);
+			}
+		}
+		return td;
+	}
+
+	/**
+	 * Records a task's subtree in the prefix cache once it and its donations have all been searched, unless the search
+	 * was stopped, pruned by forward checking or the task was resumed part way through its subtree
+	 */
+	protected void cacheResult(SearchTask task,ThreadData td) {
+		if (prefixCache==null || forwardCheckHorizon>0 || _cancelled || task._resumed) {
+			return;
+		}
+		try {
+			prefixCache.add(task._ptn,task._prefixLength,sequenceLength,td.result,td.result>0 ? td.ptn : null);
+		} catch (IOException e) {
+			System.out.println("    Unable to write prefix cache "+prefixCache.path+": "+e);
+		}
+	}
+
+	/**
+	 * Records the first certificate reaching abortDigitCount and tells every other task to stop.
+	 * Tasks check for cancellation at every donation check so they stop within donationInterval nodes,
+	 * tasks that have not started yet stop immediately.
+	 */
+	protected synchronized void cancelSearch(Partition ptn,int digitCount) {
+		if (_certificate==null) {
+			_certificate = ptn.clone();
+			_certificate.setDigitCount(digitCount);
+			_cancelled = true;
+		}
+	}
+
+	/**
+	 * Tells every task to stop as the time limit has passed, unless a certificate reaching abortDigitCount stopped them first
+	 */
+	protected synchronized void stopSearch() {
+		if (!_cancelled) {
+			_timedOut = true;
+			_cancelled = true;
+		}
+	}
+
+	/**
+	 * Records a new certificate if it is the longest found by any task so far
+	 */
+	protected synchronized void recordCertificate(Partition ptn,int digitCount) {
+		if (digitCount>_bestDigitCount) {
+			_bestDigitCount = digitCount;
+			_bestCertificate = ptn;
+		}
+	}
+
+	/**
+	 * Searches all extensions of the first prefixLength digits of the task's partition, resuming from the task's frontier if it has been started.
+	 * Any subtrees donated to idle workers are added to the donation list as forked tasks which the caller must join.
+	 */
+	protected ThreadData calculatePartiton(SearchTask task,List<SearchTask> donationList) {
+		Partition ptn = task._ptn;
+		final int prefixLength = task._prefixLength;
+		final int threadNumber = task._threadNumber;
 		ThreadData td = new ThreadData();
 		td.ptn = ptn;
 		td.threadNumber = threadNumber;
 		int maxDigitCount = 0;
-		int digitCount = initialDigitCount + 1;
-		ptn.setDigitCount(digitCount);
+		APChecker checker = _threadCheckers.get();
+		SearchCounters counters = _threadCounters.get();
+		checker.reset();
+		final int allColors = checker.getAllColors();
+		int[] forbiddenColors = new int[Partition.BLOCK_SIZE]; // the colors completing an AP at each position of the current prefix
+		int digitCount;
+		SearchFrontier frontier = task._frontier;
+		if (frontier.isStarted()) {
+			digitCount = frontier.digitCount;
+			forbiddenColors = ensureStackCapacity(forbiddenColors,digitCount);
+			frontier.restoreForbiddenColors(forbiddenColors);
+		} else {
+			digitCount = prefixLength + 1;
+			ptn.setDigitCount(digitCount);
+			forbiddenColors[digitCount] = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
+		}
+		ForwardChecker forwardChecker = _threadForwardCheckers.get();
+		if (forwardChecker!=null) {
+			forwardChecker.reset();
+			forwardChecker.placePrefix(ptn,digitCount-1,getPruneLimit(_bestDigitCount));
+		}
+		ColoringCount coloringCount = _threadColoringCounts!=null ? _threadColoringCounts.get() : null;
+		int[] lowestColors = null; // the lowest color among the first d digits, only kept when counting
+		if (coloringCount!=null) {
+			lowestColors = new int[forbiddenColors.length];
+			lowestColors[0] = colorCount;
+			for (int d=0; d<digitCount-1; d++) {
+				lowestColors[d+1] = Math.min(lowestColors[d],ptn.getDigit(d));
+			}
+		}
+		int nodeCount = 0;
 		td.result = -1;
+		if (_cancelled) {
+			return td;
+		}
 		while (td.result==-1) {
 			if (abortDigitCount>0 && digitCount>=abortDigitCount) {
+				cancelSearch(ptn,digitCount-1);
 				return td;
 			}
-			int maxd = (digitCount-1) / (sequenceLength-1);
-			int lastDigit = ptn.getLastDigit();
-			boolean foundAnyCert = false;
-			for (int testDigit=lastDigit; testDigit<colorCount; testDigit++) {
-				ptn.setLastDigit(testDigit);
-				int lastAPPosition = checkForAPFreenessFinalDigit(ptn,maxd,digitCount);
-				boolean foundCert = lastAPPosition == -1;
-				//if (enableLogging) {
-					//Log.log("        checking partition "+digitCount+","+ptn+",cert="+foundCert);
-				//}
-				if (foundCert) {
-					foundAnyCert = true;
-					td.certCount++;
-					//Log.log("            found new cert "+ptn);
-					break;
+			if (++nodeCount==donationInterval) {
+				nodeCount = 0;
+				if (_deadline>0 && System.currentTimeMillis()>=_deadline) {
+					stopSearch();
+				}
+				if (_cancelled) {
+					return td;
+				}
+				if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getSurplusQueuedTaskCount()<=0) {
+					int donatedDigitCount = donateSubtree(ptn,prefixLength,digitCount,forbiddenColors,allColors,threadNumber,donationList);
+					if (donatedDigitCount>0) {
+						// the donated prefix is a certificate we would have visited, the new task only visits its extensions
+						td.certCount++;
+						counters.visit(donatedDigitCount);
+					}
+				}
+				_metrics.add(counters);
+				if (task._publishedGeneration!=_checkpointGeneration) {
+					task._publishedGeneration = _checkpointGeneration;
+					task._frontier = SearchFrontier.create(threadNumber,prefixLength,ptn,digitCount,forbiddenColors);
 				}
 			}
+			// prune against the best certificate of any task, a stale value only prunes less
+			int testDigit = forwardChecker==null ? nextAllowedColor(forbiddenColors[digitCount],ptn.getLastDigit())
+					: nextViableColor(forwardChecker,forbiddenColors[digitCount],ptn.getLastDigit(),ptn,digitCount-1,getPruneLimit(_bestDigitCount));
+			boolean foundAnyCert = testDigit<colorCount;
 			if (foundAnyCert) {
+				ptn.setLastDigit(testDigit);
+				td.certCount++;
+				counters.visit(digitCount);
+				if (coloringCount!=null) {
+					lowestColors[digitCount] = Math.min(lowestColors[digitCount-1],testDigit);
+					coloringCount.add(digitCount,colorCount-lowestColors[digitCount]);
+				}
+				if (_certificateWriter!=null) {
+					_certificateWriter.add(ptn);
+				}
+				//Log.log("            found new cert "+ptn);
 				if (digitCount>maxDigitCount) {
 					maxDigitCount = digitCount;
-					long now = new Date().getTime();
+					long now = System.currentTimeMillis();
 					long dur = now - _startTime;
-					System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+" ["+threadNumber+"]");
-					td.ptn = ptn.clone();
+					System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+formatEta(_metrics.getNodeCount())+" ["+threadNumber+"]");
+					td.ptn = getLeader(ptn);
+					recordCertificate(td.ptn,digitCount);
 				}
 				digitCount++;
 				ptn.setDigitCount(digitCount);
+				forbiddenColors = ensureStackCapacity(forbiddenColors,digitCount);
+				if (lowestColors!=null) {
+					lowestColors = ensureStackCapacity(lowestColors,digitCount);
+				}
+				forbiddenColors[digitCount] = checker.getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
 			} else {
 				boolean done = false;
 				while (!done) {
 					digitCount--;
-					if (digitCount==initialDigitCount) {
+					counters.backtrackCount++;
+					if (digitCount==prefixLength) {
 						td.result = maxDigitCount;
 						return td;
 					}
 					ptn.setDigitCount(digitCount);
 					int value = ptn.getLastDigit();
-					if (value<colorCount) {
+					if (value<colorCount-1) {
 						//Log.log("    backtracked to "+ptn);
 						ptn.setLastDigit(value+1);
 						done = true;
@@ -140,10 +642,111 @@ public class ThreadedVdwGenerator extends VdwGenerator {
 		return td;
 	}
 
-	static private class ThreadData {
+	/**
+	 * Finds the shallowest position (above the current one) that still has untried colors and hands the first of them to a new task.
+	 * The donated color is added to the forbidden colors of that position so that we skip it when we backtrack.
+	 * Returns the digit count of the donated prefix or 0 if nothing was donated.
+	 */
+	protected int donateSubtree(Partition ptn,int prefixLength,int digitCount,int[] forbiddenColors,int allColors,int threadNumber,List<SearchTask> donationList) {
+		for (int position=prefixLength; position<digitCount-1; position++) {
+			int untriedColors = ~forbiddenColors[position+1] & allColors & (-2 << ptn.getDigit(position));
+			if (untriedColors!=0) {
+				int color = Integer.numberOfTrailingZeros(untriedColors);
+				forbiddenColors[position+1] |= 1 << color;
+				Partition donation = ptn.clone();
+				donation.setDigitCount(position+1);
+				donation.setLastDigit(color);
+				if (_certificateWriter!=null) {
+					_certificateWriter.add(donation);
+				}
+				if (_threadColoringCounts!=null) {
+					_threadColoringCounts.get().add(donation);
+				}
+				SearchTask task = new SearchTask(donation,position+1,threadNumber);
+				registerTask(task);
+				task.fork();
+				donationList.add(task);
+				return position+1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Searches the subtree below a prefix and then collects the results of any subtrees it donated along the way
+	 */
+	protected class SearchTask extends RecursiveTask<ThreadData> {
+
+		static final private long serialVersionUID = 1L;
+
+		// attributes
+		final private Partition _ptn;
+		final private int _prefixLength;
+		final private int _threadNumber;
+		private volatile SearchFrontier _frontier; // the latest published snapshot of this task
+		private int _publishedGeneration;
+		final private boolean _resumed; // set if the task resumes a started frontier so it only searches part of its subtree
+
+		public SearchTask(Partition ptn,int prefixLength,int threadNumber) {
+			_ptn = ptn;
+			_prefixLength = prefixLength;
+			_threadNumber = threadNumber;
+			_frontier = SearchFrontier.create(threadNumber,prefixLength,ptn,prefixLength,null);
+			_publishedGeneration = _checkpointGeneration;
+			_resumed = false;
+		}
+
+		/**
+		 * Creates a task that resumes the search from a checkpointed frontier
+		 */
+		public SearchTask(Partition ptn,SearchFrontier frontier) {
+			_ptn = ptn;
+			_prefixLength = frontier.prefixLength;
+			_threadNumber = frontier.threadNumber;
+			_frontier = frontier;
+			_publishedGeneration = _checkpointGeneration;
+			_resumed = frontier.isStarted();
+		}
+
+		@Override
+		protected ThreadData compute() {
+			ThreadData td = findCachedResult(this);
+			if (td!=null) {
+				unregisterTask(this);
+				return td;
+			}
+			List<SearchTask> donationList = new ArrayList<SearchTask>();
+			try {
+				td = calculatePartiton(this,donationList);
+				_metrics.add(_threadCounters.get());
+			} finally {
+				unregisterTask(this);
+			}
+			for (SearchTask task : donationList) {
+				td.merge(task.join());
+			}
+			cacheResult(this,td);
+			return td;
+		}
+	}
+
+	static protected class ThreadData {
 		public int threadNumber;
 		public int result;
 		public Partition ptn;
 		public long certCount;
+		public int taskCount = 1;
+
+		/**
+		 * Combines the results of a donated subtree into ours
+		 */
+		public void merge(ThreadData td) {
+			if (td.result>result) {
+				result = td.result;
+				ptn = td.ptn;
+			}
+			certCount += td.certCount;
+			taskCount += td.taskCount;
+		}
 	}
 }
@@ -2,8 +2,13 @@ package org.dbaussie.vdw;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.dbaussie.vdw.check.ForwardChecker;
 import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.metrics.SearchCounters;
 import org.dbaussie.vdw.model.Partition;
 
 public class VdwGenerator extends AbstractVdwGenerator {
@@ -14,9 +19,10 @@ public class VdwGenerator extends AbstractVdwGenerator {
 	// attributes
 	protected ArrayList<Partition> _initialCertificates;
 	protected int _certIndex;
+	protected double[] _estimates; // the estimated number of certificates below each initial certificate
 
 	// properties
-	public boolean useNormalization = true;
+	public boolean useNormalization = true; // only search certificates whose colors first appear in descending order
 
 	static public void main(String[] argv) {
 		Log.enabled = true;
@@ -35,53 +41,76 @@ public class VdwGenerator extends AbstractVdwGenerator {
 
 	@Override 
 	public void calculate() {
+		_certificate = null;
+		_subtreeCount = 0;
 		boolean foundAnyCert = initialize();
 		if (!foundAnyCert) {
 			setResult(0);
 			return;
 		}
 		int maxDigitCount = 0;
+		estimateInitialCertificates();
+		openCertificateWriter();
+		long visitedCount = 0;
+		SearchCounters counters = new SearchCounters();
+		int nodeCount = 0;
+		startMetrics();
+		_certIndex = 0;
 		Partition ptn = _initialCertificates.get(0);
 		_certIndex++;
 		int digitCount = initialDigitCount + 1;
 		ptn.setDigitCount(digitCount);
+		_checker.reset();
+		ForwardChecker forwardChecker = createForwardChecker();
+		if (forwardChecker!=null) {
+			forwardChecker.placePrefix(ptn,digitCount-1,getPruneLimit(maxDigitCount));
+		}
+		int[] forbiddenColors = new int[Partition.BLOCK_SIZE]; // the colors completing an AP at each position of the current prefix
+		forbiddenColors[digitCount] = getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
 
 		while (_result==-1) {
 			if (abortDigitCount>0 && digitCount>=abortDigitCount) {
+				_certificate = ptn.clone();
+				_certificate.setDigitCount(digitCount-1);
+				_visitedCount = visitedCount;
 				setResult(0);
 				break;
 			}
-			int maxd = (digitCount-1) / (sequenceLength-1);
-			int lastDigit = ptn.getLastDigit();
-			foundAnyCert = false;
-			for (int testDigit=lastDigit; testDigit<colorCount; testDigit++) {
-				ptn.setLastDigit(testDigit);
-				int lastAPPosition = checkForAPFreenessFinalDigit(ptn,maxd,digitCount);
-				boolean foundCert = lastAPPosition == -1;
-				//if (enableLogging) {
-					//Log.log("        checking partition "+digitCount+","+ptn+",cert="+foundCert);
-				//}
-				if (foundCert) {
-					foundAnyCert = true;
-					//Log.log("            found new cert "+ptn);
-					break;
-				}
+			if (++nodeCount==metricsInterval) {
+				nodeCount = 0;
+				_metrics.add(counters);
 			}
+			// only certificates longer than the best so far (or reaching abortDigitCount) matter so prune against those
+			int testDigit = forwardChecker==null ? nextAllowedColor(forbiddenColors[digitCount],ptn.getLastDigit())
+					: nextViableColor(forwardChecker,forbiddenColors[digitCount],ptn.getLastDigit(),ptn,digitCount-1,getPruneLimit(maxDigitCount));
+			foundAnyCert = testDigit<colorCount;
 			if (foundAnyCert) {
+				ptn.setLastDigit(testDigit);
+				visitedCount++;
+				counters.visit(digitCount);
+				if (_certificateWriter!=null) {
+					_certificateWriter.add(ptn);
+				}
+				//Log.log("            found new cert "+ptn);
 				if (digitCount>maxDigitCount) {
 					maxDigitCount = digitCount;
-					long now = new Date().getTime();
+					long now = System.currentTimeMillis();
 					long dur = now - _startTime;
-					System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000));
+					System.out.println("    "+toString()+" > "+digitCount+" in "+formatDuration(dur/1000)+formatEta(visitedCount));
 				}
 				digitCount++;
 				ptn.setDigitCount(digitCount);
+				forbiddenColors = ensureStackCapacity(forbiddenColors,digitCount);
+				forbiddenColors[digitCount] = getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
 			} else {
 				boolean done = false;
 				while (!done) {
 					digitCount--;
+					counters.backtrackCount++;
 					if (digitCount==initialDigitCount) {
+						_subtreeCount = _certIndex;
 						if (_certIndex>=_initialCertificates.size()) {
+							_visitedCount = visitedCount;
 							_result = maxDigitCount+1;
 							break;
 						}
@@ -90,12 +119,18 @@ public class VdwGenerator extends AbstractVdwGenerator {
 						//Log.log("    switching to new initial cert "+ptn);
 						digitCount++;
 						ptn.setDigitCount(digitCount);
+						_checker.reset();
+						if (forwardChecker!=null) {
+							forwardChecker.reset();
+							forwardChecker.placePrefix(ptn,digitCount-1,getPruneLimit(maxDigitCount));
+						}
+						forbiddenColors[digitCount] = getForbiddenColors(ptn,(digitCount-1) / (sequenceLength-1),digitCount) | getSymmetryColors(ptn,digitCount);
 						done = true;
 						break;
 					}
 					ptn.setDigitCount(digitCount);
 					int value = ptn.getLastDigit();
-					if (value<colorCount) {
+					if (value<colorCount-1) {
 						//Log.log("    backtracked to "+ptn);
 						ptn.setLastDigit(value+1);
 						done = true;
@@ -103,54 +138,87 @@ public class VdwGenerator extends AbstractVdwGenerator {
 				}
 			}
 		}
+		_metrics.add(counters);
+		_metrics.stop();
+		closeCertificateWriter();
 	}
 
 	protected boolean initialize() {
 		_result = -1;
-		ArrayList<Partition> certs = new ArrayList<Partition>();
-		int digitCount = initialDigitCount;
-		Partition ptn = new Partition(colorCount,digitCount);
-		final int maxd = 1;
-		boolean foundAnyCert = generateAllCertificates(ptn,digitCount,maxd,certs);
-		Log.log("    Found "+certs.size()+" initial certificates: "+certs+" with digit count "+initialDigitCount);
-		if (useNormalization) {
-			_initialCertificates = new ArrayList<Partition>();
-			for (Partition ptnCert : certs) {
-				boolean includeCert = filterNormalization(ptnCert,digitCount);
-				if (includeCert) {
-					_initialCertificates.add(ptnCert);
-				}
-			}
-			Log.log("    Normalized list to "+_initialCertificates.size()+" certificates "+_initialCertificates);
-		} else {
-			_initialCertificates = certs;
+		_checker = createChecker();
+		_initialCertificates = streamCertificates(initialDigitCount).collect(Collectors.toCollection(ArrayList::new));
+		if (Log.enabled) {
+			Log.log("    Found "+_initialCertificates.size()+" initial certificates: "+_initialCertificates+" with digit count "+initialDigitCount);
 		}
-		return foundAnyCert;
+		return !_initialCertificates.isEmpty();
 	}
 
 	/**
-	 * Decision function as to whether the partition value can be excluded from the search
-	 * Returns true if the partition must be included false otherwise
-	 * @param ptn
-	 * @param digitCount
-	 * @return
+	 * Returns the initial certificates the search starts from, generating them if needed
 	 */
-	protected boolean filterNormalization(Partition ptn,int digitCount) {
-		int[] partitionData = ptn.getUnderlyingArray();
-		return partitionData[0]==colorCount-1;
-/*
-		int[] newData = new int[digitCount];
-		int[] partitionData = ptn.getUnderlyingArray();
-		ArrayUtil.shiftLeft(partitionData,newData,digitCount);
-		if (newData[0]==0) {
-			if (colorCount==2) {
-				ArrayUtil.complementBinaryArray(newData,digitCount);
-			} else {
-				return true;
+	public ArrayList<Partition> getInitialCertificates() {
+		if (_initialCertificates==null) {
+			initialize();
+		}
+		return _initialCertificates;
+	}
+
+	/**
+	 * Estimator mode: finds the initial certificates and estimates the size of the search below each one without searching.
+	 * Returns the estimated total number of certificates the search would visit.
+	 */
+	public double estimate() {
+		_startTime = new Date().getTime();
+		_estimatedCount = 0;
+		if (initialize()) {
+			estimateInitialCertificates();
+			for (int index=0; index<_estimates.length; index++) {
+				System.out.println("    "+_initialCertificates.get(index)+" ~ "+Math.round(_estimates[index])+" certificates");
 			}
 		}
-		int cmp = ArrayUtil.compare(partitionData,newData,digitCount);
-		return cmp <= 0;
-		*/
+		System.out.println("Estimated "+toString()+" search size ~ "+Math.round(_estimatedCount)+" certificates");
+		return _estimatedCount;
+	}
+
+	/**
+	 * Estimates the size of the subtree below each initial certificate with estimateProbeCount random probes.
+	 * The certificates are probed in parallel, each with its own checker and a copy of the certificate, and each with a fixed seed
+	 * so estimates are repeatable.
+	 */
+	protected void estimateInitialCertificates() {
+		_estimates = new double[_initialCertificates.size()];
+		_estimatedCount = 0;
+		if (estimateProbeCount<=0) {
+			return;
+		}
+		IntStream.range(0,_estimates.length).parallel().forEach(index -> {
+			Partition ptn = _initialCertificates.get(index).clone();
+			_estimates[index] = estimateTreeSize(createChecker(),ptn,initialDigitCount,estimateProbeCount,new Random(index));
+		});
+		for (double estimate : _estimates) {
+			_estimatedCount += estimate;
+		}
+		Log.log("    Estimated "+Math.round(_estimatedCount)+" certificates to search from "+estimateProbeCount+" probes per initial certificate");
+	}
+
+	/**
+	 * Returns the mask of colors that cannot be used for the last digit without breaking the normalization,
+	 * ie those below the next color to appear. Once color 0 has appeared every color is allowed.
+	 * Every certificate is a permutation of the colors of exactly one certificate whose colors first appear in
+	 * descending order (colorCount-1 first, then colorCount-2, ...) so only those need to be searched.
+	 * The prefix must already be normalized.
+	 */
+	@Override
+	protected int getSymmetryColors(Partition ptn,int digitCount) {
+		if (!useNormalization) {
+			return 0;
+		}
+		// in a normalized prefix the lowest color so far is the last new color, it is found well before the end
+		// as a prefix using only the top c colors is shorter than W(c,sequenceLength)
+		int lowestColor = colorCount;
+		for (int d=0; d<digitCount-1 && lowestColor>0; d++) {
+			lowestColor = Math.min(lowestColor,ptn.getDigit(d));
+		}
+		return lowestColor<=1 ? 0 : (1 << (lowestColor-1)) - 1;
 	}
 }
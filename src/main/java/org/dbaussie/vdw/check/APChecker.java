@@ -0,0 +1,70 @@
+package org.dbaussie.vdw.check;
+
+import org.dbaussie.vdw.model.BytePartition;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * An APChecker tests a Partition for monochromatic arithmetic progressions (APs) of length sequenceLength.
+ * 
+ * The generators never access digits directly when looking for APs, instead they delegate to a checker.
+ * This allows the storage used by the partition and the algorithm used to scan it to be specialized together,
+ * eg a bit packed partition with a word parallel checker for two colors.
+ * 
+ * @author dbaussie
+ *
+ */
+abstract public class APChecker {
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+
+	public APChecker(int colorCount,int sequenceLength) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+	}
+
+	/**
+	 * Creates a new partition using the storage this checker is specialized for, the compact byte storage unless there are too many colors
+	 */
+	public Partition createPartition(int digitCount) {
+		return colorCount<=BytePartition.MAX_COLOR_COUNT ? new BytePartition(colorCount,digitCount) : new Partition(colorCount,digitCount);
+	}
+
+	/**
+	 * Tells the checker that the search is starting on a new prefix so any state kept about earlier digits is stale.
+	 * Stateless checkers can ignore this.
+	 */
+	public void reset() {
+	}
+
+	/**
+	 * Checks for a monochromatic AP ending at the last digit with any difference up to maxd.
+	 * 
+	 * @return the position of the last digit if such an AP exists otherwise -1
+	 */
+	abstract public int checkFinalDigit(Partition ptn,int maxd,int digitCount);
+
+	/**
+	 * Finds all the colors that would complete a monochromatic AP ending at the last digit with any difference up to maxd.
+	 * Only the digits before the last digit are examined so the result does not depend on the current value of the last digit.
+	 * This lets a search test every candidate color for a position with a single pass over the differences.
+	 * 
+	 * @return a mask with bit c set if color c is forbidden for the last digit (hence colorCount must be below 32)
+	 */
+	abstract public int getForbiddenColors(Partition ptn,int maxd,int digitCount);
+
+	/**
+	 * Returns the mask with a bit set for every color
+	 */
+	public int getAllColors() {
+		return (1 << colorCount) - 1;
+	}
+
+	/**
+	 * Checks for a monochromatic AP anywhere in the first digitCount digits with any difference up to maxd.
+	 * 
+	 * @return the position of the final term of the first AP found otherwise -1
+	 */
+	abstract public int checkAnyDigit(Partition ptn,int maxd,int digitCount);
+}
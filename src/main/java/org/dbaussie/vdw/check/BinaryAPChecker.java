@@ -0,0 +1,119 @@
+package org.dbaussie.vdw.check;
+
+import org.dbaussie.vdw.model.BinaryPartition;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.util.ArrayUtil;
+
+/**
+ * A word parallel checker for two colors which works on BinaryPartitions.
+ * 
+ * The final digit check tests 64 differences per step: for the digit at position p and each n=1..sequenceLength-1
+ * the digits at p-n, p-2n, ..., p-64n are adjacent bits of the stride n bitset so a single window read gives the
+ * n'th term of the AP for 64 differences at once. ANDing the windows (or their complements for color 0) leaves a
+ * bit set for every difference that completes a monochromatic AP.
+ * The forbidden colors are found the same way, tracking the windows and their complements together.
+ * The any digit check works the other way around and tests 64 start positions for a given difference per step.
+ * 
+ * Any other kind of Partition is passed through to the scalar checker.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BinaryAPChecker extends ScalarAPChecker {
+
+	public BinaryAPChecker(int sequenceLength) {
+		super(2,sequenceLength);
+	}
+
+	@Override
+	public Partition createPartition(int digitCount) {
+		return new BinaryPartition(digitCount,sequenceLength-1);
+	}
+
+	private boolean isSupported(Partition ptn) {
+		return ptn instanceof BinaryPartition && ((BinaryPartition)ptn).strideCount>=sequenceLength-1;
+	}
+
+	@Override
+	public int checkFinalDigit(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.checkFinalDigit(ptn,maxd,digitCount);
+		}
+		BinaryPartition bptn = (BinaryPartition)ptn;
+		int position = digitCount-1;
+		long flip = bptn.getDigit(position)==0 ? -1L : 0L;
+		for (int d0=1; d0<=maxd; d0+=BinaryPartition.WORD_SIZE) {
+			int hi = Math.min(maxd,d0+BinaryPartition.WORD_SIZE-1);
+			if (getFinalMatches(bptn,position,hi,hi-d0+1,flip,sequenceLength)!=0) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a bit for each of the len differences up to hi (bit b for the difference hi-b) for which the sequenceLength-1
+	 * digits before position at that difference are all 1, or all 0 if flip is -1
+	 */
+	static protected long getFinalMatches(BinaryPartition bptn,int position,int hi,int len,long flip,int sequenceLength) {
+		long[] words = bptn.getWords();
+		long matches = len==BinaryPartition.WORD_SIZE ? -1L : (1L << len)-1;
+		for (int n=1; n<sequenceLength && matches!=0; n++) {
+			matches &= ArrayUtil.getBitWindow(words,bptn.getStrideBit(position,n)-hi) ^ flip;
+		}
+		return matches;
+	}
+
+	@Override
+	public int getForbiddenColors(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.getForbiddenColors(ptn,maxd,digitCount);
+		}
+		BinaryPartition bptn = (BinaryPartition)ptn;
+		long[] words = bptn.getWords();
+		int position = digitCount-1;
+		int forbiddenColors = 0;
+		for (int d0=1; d0<=maxd && forbiddenColors!=3; d0+=BinaryPartition.WORD_SIZE) {
+			int hi = Math.min(maxd,d0+BinaryPartition.WORD_SIZE-1);
+			int len = hi-d0+1;
+			long ones = len==BinaryPartition.WORD_SIZE ? -1L : (1L << len)-1;
+			long zeros = ones;
+			for (int n=1; n<sequenceLength && (ones|zeros)!=0; n++) {
+				long window = ArrayUtil.getBitWindow(words,bptn.getStrideBit(position,n)-hi);
+				ones &= window;
+				zeros &= ~window;
+			}
+			forbiddenColors |= (zeros!=0 ? 1 : 0) | (ones!=0 ? 2 : 0);
+		}
+		return forbiddenColors;
+	}
+
+	@Override
+	public int checkAnyDigit(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.checkAnyDigit(ptn,maxd,digitCount);
+		}
+		long[] words = ((BinaryPartition)ptn).getWords(); // the stride 1 bitset comes first so bit p holds position p
+		for (int d=1; d<=maxd; d++) {
+			int span = d*(sequenceLength-1);
+			int ub = digitCount - span;
+			for (int a0=0; a0<ub; a0+=BinaryPartition.WORD_SIZE) {
+				// bit b of each window corresponds to the AP starting at a0+b
+				int len = Math.min(BinaryPartition.WORD_SIZE,ub-a0);
+				long mask = len==BinaryPartition.WORD_SIZE ? -1L : (1L << len)-1;
+				long ones = mask;
+				long zeros = mask;
+				for (int n=0; n<sequenceLength && (ones|zeros)!=0; n++) {
+					long window = ArrayUtil.getBitWindow(words,a0+n*d);
+					ones &= window;
+					zeros &= ~window;
+				}
+				long matches = ones | zeros;
+				if (matches!=0) {
+					return a0 + Long.numberOfTrailingZeros(matches) + span;
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,101 @@
+package org.dbaussie.vdw.check;
+
+import org.dbaussie.vdw.model.BinaryPartition;
+import org.dbaussie.vdw.model.BitSlicedPartition;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.util.ArrayUtil;
+
+/**
+ * A word parallel checker for any number of colors which works on BitSlicedPartitions.
+ * 
+ * Each color has its own bit plane so the tests of BinaryAPChecker carry over with the plane of a color taking the place
+ * of the bitset: ANDing the windows of a plane tests 64 differences (or 64 start positions) at once for that color.
+ * The forbidden colors need one pass per color that is not already forbidden, the final digit check only needs the
+ * plane of the final digit.
+ * 
+ * Any other kind of Partition is passed through to the scalar checker.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BitSlicedAPChecker extends ScalarAPChecker {
+
+	public BitSlicedAPChecker(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength);
+	}
+
+	@Override
+	public Partition createPartition(int digitCount) {
+		return new BitSlicedPartition(colorCount,digitCount,sequenceLength-1);
+	}
+
+	private boolean isSupported(Partition ptn) {
+		return ptn instanceof BitSlicedPartition && ((BitSlicedPartition)ptn).strideCount>=sequenceLength-1;
+	}
+
+	@Override
+	public int checkFinalDigit(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.checkFinalDigit(ptn,maxd,digitCount);
+		}
+		int position = digitCount-1;
+		BinaryPartition plane = ((BitSlicedPartition)ptn).getPlane(ptn.getDigit(position));
+		for (int d0=1; d0<=maxd; d0+=BinaryPartition.WORD_SIZE) {
+			int hi = Math.min(maxd,d0+BinaryPartition.WORD_SIZE-1);
+			if (BinaryAPChecker.getFinalMatches(plane,position,hi,hi-d0+1,0L,sequenceLength)!=0) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int getForbiddenColors(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.getForbiddenColors(ptn,maxd,digitCount);
+		}
+		BitSlicedPartition sptn = (BitSlicedPartition)ptn;
+		final int allColors = getAllColors();
+		int position = digitCount-1;
+		int forbiddenColors = 0;
+		for (int d0=1; d0<=maxd && forbiddenColors!=allColors; d0+=BinaryPartition.WORD_SIZE) {
+			int hi = Math.min(maxd,d0+BinaryPartition.WORD_SIZE-1);
+			for (int color=0; color<colorCount; color++) {
+				if ((forbiddenColors & (1 << color))==0 && BinaryAPChecker.getFinalMatches(sptn.getPlane(color),position,hi,hi-d0+1,0L,sequenceLength)!=0) {
+					forbiddenColors |= 1 << color;
+				}
+			}
+		}
+		return forbiddenColors;
+	}
+
+	@Override
+	public int checkAnyDigit(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported(ptn)) {
+			return super.checkAnyDigit(ptn,maxd,digitCount);
+		}
+		BitSlicedPartition sptn = (BitSlicedPartition)ptn;
+		for (int d=1; d<=maxd; d++) {
+			int span = d*(sequenceLength-1);
+			int ub = digitCount - span;
+			for (int a0=0; a0<ub; a0+=BinaryPartition.WORD_SIZE) {
+				// bit b of each window corresponds to the AP starting at a0+b
+				int len = Math.min(BinaryPartition.WORD_SIZE,ub-a0);
+				long mask = len==BinaryPartition.WORD_SIZE ? -1L : (1L << len)-1;
+				long matches = 0;
+				for (int color=0; color<colorCount; color++) {
+					long[] words = sptn.getPlane(color).getWords(); // the stride 1 bitset comes first so bit p holds position p
+					long colorMatches = mask;
+					for (int n=0; n<sequenceLength && colorMatches!=0; n++) {
+						colorMatches &= ArrayUtil.getBitWindow(words,a0+n*d);
+					}
+					matches |= colorMatches;
+				}
+				if (matches!=0) {
+					return a0 + Long.numberOfTrailingZeros(matches) + span;
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,134 @@
+package org.dbaussie.vdw.check;
+
+import java.util.Arrays;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Forward checking for the prefix search: as each digit is placed the colors it rules out for later positions are recorded
+ * so that a prefix can be abandoned as soon as some later position has no color left, rather than when the search gets there.
+ * 
+ * Placing color c at position p forbids c at p+d whenever p-d, p-2d, ... p-(sequenceLength-2)d all have color c.
+ * Only differences up to the horizon and positions up to the limit given when the digit is placed are tracked, so the
+ * recorded sets are subsets of the colors that will really be forbidden, and a position with no color left can never be
+ * reached by any extension of the prefix.
+ * The changes made by each position are kept on a trail so that replacing a digit (and everything after it) just pops the trail.
+ * 
+ * @author dbaussie
+ *
+ */
+public class ForwardChecker {
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int horizon; // the largest difference tracked, ie how far ahead of the last digit positions are checked
+
+	// attributes
+	protected int[] _futureColors; // the colors ruled out at each position by the digits placed so far
+	protected int[] _trail; // pairs of position and the colors it had before the change
+	protected int _trailSize;
+	protected int[] _trailMarks; // the trail size before the digit at each position was placed
+	protected int _placedCount; // the number of leading positions whose digits have been placed
+	protected int _allColors;
+
+	public ForwardChecker(int colorCount,int sequenceLength,int horizon) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.horizon = horizon;
+		_allColors = (1 << colorCount) - 1;
+		_futureColors = new int[Partition.BLOCK_SIZE+horizon];
+		_trailMarks = new int[Partition.BLOCK_SIZE];
+		_trail = new int[2*Partition.BLOCK_SIZE];
+	}
+
+	/**
+	 * Forgets every placed digit, the search must call this whenever it switches to a different prefix
+	 */
+	public void reset() {
+		Arrays.fill(_futureColors,0);
+		_trailSize = 0;
+		_placedCount = 0;
+	}
+
+	/**
+	 * Places the first digitCount digits of a partition, eg for the prefix a search starts from.
+	 * Only positions up to limit are tracked.
+	 */
+	public void placePrefix(Partition ptn,int digitCount,int limit) {
+		for (int position=0; position<digitCount; position++) {
+			place(ptn,position,ptn.getDigit(position),limit);
+		}
+	}
+
+	/**
+	 * Places a color at a position replacing the digit previously placed there and any digits after it.
+	 * The digits before the position are read from the partition.
+	 * 
+	 * @return false if a position up to limit is left with no color, in which case no extension of the prefix reaches limit+1 digits.
+	 * A failed placement is still kept, so the next call must replace it, ie be for this position or an earlier one.
+	 */
+	public boolean place(Partition ptn,int position,int color,int limit) {
+		if (position<_placedCount) {
+			int mark = _trailMarks[position];
+			while (_trailSize>mark) {
+				_trailSize -= 2;
+				_futureColors[_trail[_trailSize]] = _trail[_trailSize+1];
+			}
+		}
+		ensureCapacity(position+1);
+		_trailMarks[position] = _trailSize;
+		_placedCount = position + 1;
+		final int colorBit = 1 << color;
+		final int gapCount = sequenceLength - 2; // the number of terms between the new digit and the start of the AP
+		boolean viable = true;
+		// positions after limit cannot prune anything yet so they are not tracked
+		final int maxDifference = Math.min(horizon,limit-position);
+		for (int d=1; d<=maxDifference; d++) {
+			int first = position - gapCount*d;
+			if (first<0) {
+				break;
+			}
+			int futurePosition = position + d;
+			int oldColors = _futureColors[futurePosition];
+			if ((oldColors & colorBit)!=0) {
+				continue;
+			}
+			boolean match = true;
+			for (int term=position-d; term>=first && match; term-=d) {
+				match = ptn.getDigit(term)==color;
+			}
+			if (match) {
+				_trail[_trailSize++] = futurePosition;
+				_trail[_trailSize++] = oldColors;
+				_futureColors[futurePosition] = oldColors | colorBit;
+				if ((oldColors | colorBit)==_allColors) {
+					viable = false;
+				}
+			}
+		}
+		return viable;
+	}
+
+	/**
+	 * Returns the colors ruled out at a position by the digits placed so far
+	 */
+	public int getFutureColors(int position) {
+		return position<_futureColors.length ? _futureColors[position] : 0;
+	}
+
+	/**
+	 * Make sure there is room to place newPlacedCount digits, ie for their marks, trail entries and future positions
+	 */
+	private void ensureCapacity(int newPlacedCount) {
+		if (newPlacedCount>_trailMarks.length) {
+			int newCapacity = _trailMarks.length + Partition.BLOCK_SIZE;
+			_trailMarks = Arrays.copyOf(_trailMarks,newCapacity);
+			_futureColors = Arrays.copyOf(_futureColors,newCapacity+horizon);
+		}
+		// every placed digit adds at most one entry per difference
+		if (_trailSize+2*horizon>_trail.length) {
+			_trail = Arrays.copyOf(_trail,_trail.length+2*Math.max(horizon,Partition.BLOCK_SIZE));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.dbaussie.vdw.check;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * A checker that keeps run length counters for the current prefix so that extending the prefix by one digit costs
+ * O(maxd) table operations rather than walking back along every difference.
+ * 
+ * For every position s and difference d the table holds the length of the monochromatic run with difference d that ends
+ * at position s-d, ie the number of terms of s-d, s-2d, ... that match the digit at s-d (capped at sequenceLength-1).
+ * The table is indexed by s rather than by the end of the run so that the forbidden colors for position s can be read
+ * from a single contiguous row: color c is forbidden if some run of color c reaches sequenceLength-1 terms.
+ * 
+ * Once the digit at a position q is fixed its runs are 'committed' by writing them into the rows q+d. This happens lazily
+ * the next time the forbidden colors are requested, so backtracking costs nothing: the rows for a position are simply
+ * overwritten the next time the search extends past it with a different digit.
+ * Each table entry also records the color of its run so that neither step needs to read the partition itself.
+ * The search must call reset() whenever it switches to a different prefix and otherwise only change the last digit.
+ * 
+ * @author dbaussie
+ *
+ */
+public class IncrementalAPChecker extends ScalarAPChecker {
+
+	// constants
+	final static public int MAX_COLOR_COUNT = 16; // the color and run length of each entry are packed into a single byte
+	final static public int MAX_SEQUENCE_LENGTH = 16;
+
+	// attributes
+	protected byte[] _runs; // the entry for row s and difference d is held at index _rowOffsets[s]+d
+	protected int[] _rowOffsets; // row s has entries for differences up to s/(sequenceLength-1)
+	protected int _capacity; // the number of positions the table has rows for
+	protected int _committedCount; // the number of leading positions whose runs have been written into the table
+
+	public IncrementalAPChecker(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength);
+		_runs = new byte[0];
+		_rowOffsets = new int[0];
+	}
+
+	@Override
+	public void reset() {
+		_committedCount = 0;
+	}
+
+	/**
+	 * Returns true if the table can be used ie the colors and run lengths fit into the packed entries
+	 */
+	protected boolean isSupported() {
+		return sequenceLength>=3 && sequenceLength<=MAX_SEQUENCE_LENGTH && colorCount<=MAX_COLOR_COUNT;
+	}
+
+	/**
+	 * Make sure that the table has a row for every position up to newDigitCount.
+	 * If the table has to be reallocated all runs are recomputed on the next request.
+	 */
+	private void ensureCapacity(int newDigitCount) {
+		if (newDigitCount<=_capacity) {
+			return;
+		}
+		int blockCount = (newDigitCount-1) / Partition.BLOCK_SIZE + 1;
+		_capacity = Partition.BLOCK_SIZE * blockCount;
+		_rowOffsets = new int[_capacity];
+		int size = 0;
+		for (int s=0; s<_capacity; s++) {
+			_rowOffsets[s] = size;
+			size += s/(sequenceLength-1) + 1;
+		}
+		_runs = new byte[size];
+		_committedCount = 0;
+	}
+
+	/**
+	 * Writes the runs ending at the given position into the rows of the positions they lead to.
+	 * Each entry holds the color of the run in the high nibble and its length in the low nibble.
+	 * Only differences that can matter are written ie those with d*(sequenceLength-1) <= position+d.
+	 */
+	protected void commit(Partition ptn,int position) {
+		final int maxLength = sequenceLength-1;
+		final byte[] runs = _runs;
+		final int[] rowOffsets = _rowOffsets;
+		int value = ptn.getDigit(position);
+		int colorBits = value << 4;
+		int maxd = Math.min(position/(sequenceLength-2),_capacity-1-position);
+		int recordedd = position/maxLength; // the runs ending at position-d are in our own row for d up to here
+		int rowOffset = rowOffsets[position];
+		for (int d=1; d<=recordedd; d++) {
+			int entry = runs[rowOffset+d] & 0xFF;
+			int length = 1;
+			if ((entry >>> 4)==value) {
+				length = Math.min((entry & 15)+1,maxLength);
+			}
+			runs[rowOffsets[position+d]+d] = (byte)(colorBits | length);
+		}
+		for (int d=recordedd+1; d<=maxd; d++) {
+			// the run ending at position-d is too short to have been recorded so count it directly
+			int length = 1;
+			for (int pos=position-d; pos>=0 && length<maxLength && ptn.getDigit(pos)==value; pos-=d) {
+				length++;
+			}
+			runs[rowOffsets[position+d]+d] = (byte)(colorBits | length);
+		}
+	}
+
+	@Override
+	public int getForbiddenColors(Partition ptn,int maxd,int digitCount) {
+		if (!isSupported()) {
+			return super.getForbiddenColors(ptn,maxd,digitCount);
+		}
+		ensureCapacity(digitCount);
+		int position = digitCount-1;
+		for (int q=Math.max(Math.min(_committedCount,position-1),0); q<position; q++) {
+			commit(ptn,q);
+		}
+		_committedCount = position;
+		final byte[] runs = _runs;
+		final int maxLength = sequenceLength-1;
+		int rowOffset = _rowOffsets[position];
+		int forbiddenColors = 0;
+		for (int d=1; d<=maxd; d++) {
+			int entry = runs[rowOffset+d] & 0xFF;
+			// the sign bit of maxLength-1-length is set exactly when the run is long enough
+			int full = (maxLength-1-(entry & 15)) >>> 31;
+			forbiddenColors |= full << (entry >>> 4);
+		}
+		return forbiddenColors;
+	}
+
+	@Override
+	public int checkFinalDigit(Partition ptn,int maxd,int digitCount) {
+		int forbiddenColors = getForbiddenColors(ptn,maxd,digitCount);
+		return (forbiddenColors >>> ptn.getLastDigit() & 1)==0 ? -1 : digitCount-1;
+	}
+}
@@ -0,0 +1,111 @@
+package org.dbaussie.vdw.check;
+
+import org.dbaussie.vdw.model.BytePartition;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * The original digit by digit checker which works for any number of colors and any Partition
+ * 
+ * @author dbaussie
+ *
+ */
+public class ScalarAPChecker extends APChecker {
+
+	public ScalarAPChecker(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength);
+	}
+
+	@Override
+	public int checkFinalDigit(Partition ptn,int maxd,int digitCount) {
+		int lastAPPosition = -1;
+		boolean done = false;
+		for (int d=1; d<=maxd && !done; d++) {
+			int value = ptn.getLastDigit();
+			lastAPPosition = checkForAPRightToLeft(ptn,digitCount-1,d,value);
+			done = lastAPPosition != -1;
+		}
+		return lastAPPosition;
+	}
+
+	@Override
+	public int getForbiddenColors(Partition ptn,int maxd,int digitCount) {
+		if (ptn instanceof BytePartition) {
+			return getForbiddenColors(((BytePartition)ptn).getDigits(),maxd,digitCount);
+		}
+		final int allColors = getAllColors();
+		int position = digitCount-1;
+		int forbiddenColors = 0;
+		for (int d=1; d<=maxd && forbiddenColors!=allColors; d++) {
+			int value = ptn.getDigit(position-d);
+			int colorBit = 1 << value;
+			if ((forbiddenColors & colorBit)==0 && checkForAPRightToLeft(ptn,position,d,value)!=-1) {
+				forbiddenColors |= colorBit;
+			}
+		}
+		return forbiddenColors;
+	}
+
+	/**
+	 * The same as getForbiddenColors but reading the digits of a BytePartition directly
+	 */
+	protected int getForbiddenColors(byte[] digits,int maxd,int digitCount) {
+		final int allColors = getAllColors();
+		final int position = digitCount-1;
+		int forbiddenColors = 0;
+		for (int d=1; d<=maxd && forbiddenColors!=allColors; d++) {
+			int value = digits[position-d];
+			int colorBit = 1 << value;
+			if ((forbiddenColors & colorBit)!=0) {
+				continue;
+			}
+			int pos = position-d;
+			int n = 2;
+			while (n<sequenceLength && digits[pos-d]==value) {
+				pos -= d;
+				n++;
+			}
+			if (n==sequenceLength) {
+				forbiddenColors |= colorBit;
+			}
+		}
+		return forbiddenColors;
+	}
+
+	protected int checkForAPRightToLeft(Partition ptn,int position,int difference,int value) {
+		int pos = position;
+		for (int n=1; n<sequenceLength; n++) {
+			pos -= difference;
+			if (value != ptn.getDigit(pos)) {
+				return -1;
+			}
+		}
+		return position;
+	}
+
+	@Override
+	public int checkAnyDigit(Partition ptn,int maxd,int digitCount) {
+		int lastAPPosition = -1;
+		boolean done = false;
+		int ub = digitCount;
+		for (int d=1; d<=maxd && !done; d++) {
+			ub = ub - (sequenceLength-1);
+			for (int a=0; a<ub && !done; a++) { // ub = w-d*(N-1)
+				int v = ptn.getDigit(a);
+				lastAPPosition = checkForAPLeftToRight(ptn,a,d,v);
+				done = lastAPPosition != -1;
+			}
+		}
+		return lastAPPosition;
+	}
+
+	protected int checkForAPLeftToRight(Partition ptn,int position,int difference,int value) {
+		int pos = position;
+		for (int n=1; n<sequenceLength; n++) {
+			pos += difference;
+			if (value != ptn.getDigit(pos)) {
+				return -1;
+			}
+		}
+		return pos;
+	}
+}
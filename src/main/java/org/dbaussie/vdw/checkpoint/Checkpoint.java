@@ -0,0 +1,83 @@
+package org.dbaussie.vdw.checkpoint;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a whole search: the instance being searched, the best certificate found so far and
+ * the frontier of every task that had not finished when the checkpoint was taken.
+ * Initial certificates (and donated subtrees) that have been fully searched simply have no frontier.
+ * 
+ * @author dbaussie
+ *
+ */
+public class Checkpoint {
+
+	// properties
+	public int colorCount;
+	public int sequenceLength;
+	public int initialDigitCount;
+	public int bestDigitCount;
+	public byte[] bestDigits = new byte[0];
+	public List<SearchFrontier> frontierList = new ArrayList<SearchFrontier>();
+
+	public Checkpoint() {
+	}
+
+	public Checkpoint(int colorCount,int sequenceLength,int initialDigitCount) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.initialDigitCount = initialDigitCount;
+	}
+
+	/**
+	 * Returns true if the checkpoint was taken for the given instance
+	 */
+	public boolean matches(int colorCount,int sequenceLength,int initialDigitCount) {
+		return this.colorCount==colorCount && this.sequenceLength==sequenceLength && this.initialDigitCount==initialDigitCount;
+	}
+
+	/**
+	 * Returns true if no work remains ie the best certificate is the final answer
+	 */
+	public boolean isComplete() {
+		return frontierList.isEmpty();
+	}
+
+	public int getSize() {
+		int size = 6*4 + bestDigits.length;
+		for (SearchFrontier frontier : frontierList) {
+			size += frontier.getSize();
+		}
+		return size;
+	}
+
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(colorCount);
+		buffer.putInt(sequenceLength);
+		buffer.putInt(initialDigitCount);
+		buffer.putInt(bestDigitCount);
+		buffer.putInt(bestDigits.length);
+		buffer.put(bestDigits);
+		buffer.putInt(frontierList.size());
+		for (SearchFrontier frontier : frontierList) {
+			frontier.write(buffer);
+		}
+	}
+
+	static public Checkpoint read(ByteBuffer buffer) {
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.colorCount = buffer.getInt();
+		checkpoint.sequenceLength = buffer.getInt();
+		checkpoint.initialDigitCount = buffer.getInt();
+		checkpoint.bestDigitCount = buffer.getInt();
+		checkpoint.bestDigits = new byte[buffer.getInt()];
+		buffer.get(checkpoint.bestDigits);
+		int frontierCount = buffer.getInt();
+		for (int i=0; i<frontierCount; i++) {
+			checkpoint.frontierList.add(SearchFrontier.read(buffer));
+		}
+		return checkpoint;
+	}
+}
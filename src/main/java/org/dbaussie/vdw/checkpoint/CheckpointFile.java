@@ -0,0 +1,120 @@
+package org.dbaussie.vdw.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.dbaussie.vdw.logging.Log;
+
+/**
+ * Stores checkpoints in a pair of memory mapped files (path.0 and path.1) which are written alternately.
+ * 
+ * Each file starts with a header holding a generation number and the length and CRC of the payload. The payload is
+ * written and forced to disk before the header so a crash part way through a write leaves a file with a bad CRC,
+ * in which case the other file (holding the previous checkpoint) is used. Reading picks the valid file with the
+ * highest generation.
+ * 
+ * @author dbaussie
+ *
+ */
+public class CheckpointFile {
+
+	// constants
+	final static public int MAGIC = 0x56445743; // "VDWC"
+	final static public int VERSION = 1;
+	final static public int HEADER_SIZE = 32;
+
+	// properties
+	final public String path;
+
+	// attributes
+	protected long _generation;
+
+	public CheckpointFile(String path) {
+		this.path = path;
+	}
+
+	protected File getSlotFile(long generation) {
+		return new File(path+"."+(generation & 1));
+	}
+
+	/**
+	 * Returns the most recent valid checkpoint or null if there is none
+	 */
+	public Checkpoint read() {
+		Checkpoint result = null;
+		for (int slot=0; slot<2; slot++) {
+			File file = getSlotFile(slot);
+			if (!file.exists()) {
+				continue;
+			}
+			try (FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.READ)) {
+				if (channel.size()<HEADER_SIZE) {
+					continue;
+				}
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+				int magic = buffer.getInt();
+				int version = buffer.getInt();
+				long generation = buffer.getLong();
+				int length = buffer.getInt();
+				long crc = buffer.getLong();
+				if (magic!=MAGIC || version!=VERSION || length<0 || HEADER_SIZE+length>channel.size()) {
+					continue;
+				}
+				buffer.position(HEADER_SIZE).limit(HEADER_SIZE+length);
+				CRC32 crc32 = new CRC32();
+				crc32.update(buffer.slice());
+				if (crc32.getValue()!=crc || (result!=null && generation<_generation)) {
+					continue;
+				}
+				result = Checkpoint.read(buffer);
+				_generation = generation;
+			} catch (IOException e) {
+				Log.log("    Unable to read checkpoint "+file+": "+e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the checkpoint into the older of the two files
+	 */
+	public void write(Checkpoint checkpoint) throws IOException {
+		long generation = _generation + 1;
+		int length = checkpoint.getSize();
+		File file = getSlotFile(generation);
+		try (FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE)) {
+			channel.truncate(HEADER_SIZE+length);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,HEADER_SIZE+length);
+			// invalidate the header before touching the payload
+			buffer.putInt(0,0);
+			buffer.force();
+			buffer.position(HEADER_SIZE);
+			checkpoint.write(buffer);
+			buffer.position(HEADER_SIZE).limit(HEADER_SIZE+length);
+			CRC32 crc32 = new CRC32();
+			crc32.update(buffer.slice());
+			buffer.limit(HEADER_SIZE+length);
+			buffer.force();
+			buffer.position(0);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(generation);
+			buffer.putInt(length);
+			buffer.putLong(crc32.getValue());
+			buffer.force();
+		}
+		_generation = generation;
+	}
+
+	/**
+	 * Removes both checkpoint files
+	 */
+	public void delete() {
+		getSlotFile(0).delete();
+		getSlotFile(1).delete();
+	}
+}
@@ -0,0 +1,104 @@
+package org.dbaussie.vdw.checkpoint;
+
+import java.nio.ByteBuffer;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * An immutable snapshot of where a single search task has got to.
+ * 
+ * A task owns the subtree below the first prefixLength digits. The snapshot is taken at the top of the search loop,
+ * ie just before the colors from the current last digit upwards are tried for position digitCount-1, so resuming from it
+ * re-explores at most the nodes visited since it was taken. The forbidden color masks are kept as well as the digits since
+ * they also record which sibling subtrees were donated to other tasks.
+ * 
+ * @author dbaussie
+ *
+ */
+public class SearchFrontier {
+
+	// properties
+	final public int threadNumber;
+	final public int prefixLength;
+	final public int digitCount;
+	final public byte[] digits;
+	final public int[] forbiddenColors; // the masks for digit counts prefixLength+1..digitCount
+
+	public SearchFrontier(int threadNumber,int prefixLength,int digitCount,byte[] digits,int[] forbiddenColors) {
+		this.threadNumber = threadNumber;
+		this.prefixLength = prefixLength;
+		this.digitCount = digitCount;
+		this.digits = digits;
+		this.forbiddenColors = forbiddenColors;
+	}
+
+	/**
+	 * Takes a snapshot of a search.
+	 * 
+	 * @param forbiddenColors - the search stack indexed by digit count, only the entries above prefixLength are kept
+	 */
+	static public SearchFrontier create(int threadNumber,int prefixLength,Partition ptn,int digitCount,int[] forbiddenColors) {
+		byte[] digits = new byte[digitCount];
+		for (int d=0; d<digitCount; d++) {
+			digits[d] = (byte)ptn.getDigit(d);
+		}
+		int[] masks = new int[digitCount-prefixLength];
+		if (forbiddenColors!=null) {
+			System.arraycopy(forbiddenColors,prefixLength+1,masks,0,masks.length);
+		}
+		return new SearchFrontier(threadNumber,prefixLength,digitCount,digits,masks);
+	}
+
+	/**
+	 * Returns true if the task had not started searching when the snapshot was taken
+	 */
+	public boolean isStarted() {
+		return digitCount>prefixLength;
+	}
+
+	/**
+	 * Copies the digits into the given partition setting its digit count
+	 */
+	public void restoreDigits(Partition ptn) {
+		ptn.setDigitCount(digitCount);
+		for (int d=0; d<digitCount; d++) {
+			ptn.setDigitAt(d,digits[d]);
+		}
+	}
+
+	/**
+	 * Copies the forbidden color masks back into a search stack indexed by digit count
+	 */
+	public void restoreForbiddenColors(int[] stack) {
+		System.arraycopy(forbiddenColors,0,stack,prefixLength+1,forbiddenColors.length);
+	}
+
+	public int getSize() {
+		return 4*4 + digits.length + 4*forbiddenColors.length;
+	}
+
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(threadNumber);
+		buffer.putInt(prefixLength);
+		buffer.putInt(digitCount);
+		buffer.putInt(forbiddenColors.length);
+		buffer.put(digits);
+		for (int mask : forbiddenColors) {
+			buffer.putInt(mask);
+		}
+	}
+
+	static public SearchFrontier read(ByteBuffer buffer) {
+		int threadNumber = buffer.getInt();
+		int prefixLength = buffer.getInt();
+		int digitCount = buffer.getInt();
+		int maskCount = buffer.getInt();
+		byte[] digits = new byte[digitCount];
+		buffer.get(digits);
+		int[] forbiddenColors = new int[maskCount];
+		for (int i=0; i<maskCount; i++) {
+			forbiddenColors[i] = buffer.getInt();
+		}
+		return new SearchFrontier(threadNumber,prefixLength,digitCount,digits,forbiddenColors);
+	}
+}
@@ -0,0 +1,273 @@
+package org.dbaussie.vdw.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Hands out the prefixes of a search to Worker processes over TCP and combines their results.
+ * 
+ * The prefixes are the normalized initial certificates with prefixDigitCount digits (deeper prefixes give more and smaller
+ * units of work). Each prefix is leased to one worker at a time. A lease expires unless the worker renews it within
+ * leaseTimeout, and is released at once if the worker's connection drops, after which it is leased to the next worker to ask.
+ * If an expired lease is completed by both workers the first result is kept, they are the same anyway.
+ * Once every prefix has been leased a LEASE request waits until one is released or expires, or the search is done.
+ * As in ThreadedVdwGenerator the answer is one more than the longest certificate found under any prefix.
+ * 
+ * The protocol is line based, each request gets exactly one reply:
+ * <pre>
+ * HELLO                                  INSTANCE colorCount sequenceLength leaseTimeout
+ * LEASE                                  PREFIX id digits | DONE result
+ * RENEW id                               OK | LOST
+ * RESULT id maxDigitCount certCount cert OK
+ * </pre>
+ * 
+ * @author dbaussie
+ *
+ */
+public class Coordinator {
+
+	// constants
+	final static public String HELLO = "HELLO";
+	final static public String INSTANCE = "INSTANCE";
+	final static public String LEASE = "LEASE";
+	final static public String PREFIX = "PREFIX";
+	final static public String DONE = "DONE";
+	final static public String RENEW = "RENEW";
+	final static public String RESULT = "RESULT";
+	final static public String OK = "OK";
+	final static public String LOST = "LOST";
+	final static public String ERROR = "ERROR";
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int prefixDigitCount;
+	public int port; // 0 to use any free port, see getPort()
+	public long leaseTimeout = 60000; // in ms
+
+	// attributes
+	protected List<Lease> _leases;
+	protected int _doneCount;
+	protected int _bestDigitCount;
+	protected String _bestCertificate;
+	protected long _certCount;
+	protected ServerSocket _serverSocket;
+
+	static public void main(String[] argv) throws Exception {
+		Log.enabled = true;
+		int colorCount = Integer.parseInt(argv[0]);
+		int sequenceLength = Integer.parseInt(argv[1]);
+		int prefixDigitCount = argv.length>2 ? Integer.parseInt(argv[2]) : sequenceLength+1;
+		Coordinator coordinator = new Coordinator(colorCount,sequenceLength,prefixDigitCount);
+		coordinator.port = argv.length>3 ? Integer.parseInt(argv[3]) : 7640;
+		coordinator.start();
+		System.out.println("Coordinating "+coordinator+" on port "+coordinator.getPort());
+		int result = coordinator.awaitResult();
+		System.out.println("\nCalculated "+coordinator+" = "+result+" from "+coordinator.getCertCount()+" certificates, longest "+coordinator.getBestCertificate());
+		coordinator.stop();
+	}
+
+	public Coordinator(int colorCount,int sequenceLength,int prefixDigitCount) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.prefixDigitCount = prefixDigitCount;
+	}
+
+	@Override
+	public String toString() {
+		return "W("+colorCount+","+sequenceLength+")";
+	}
+
+	/**
+	 * Generates the prefixes and starts accepting workers
+	 */
+	public void start() throws IOException {
+		VdwGenerator generator = new VdwGenerator(colorCount,sequenceLength,prefixDigitCount);
+		_leases = new ArrayList<Lease>();
+		for (Partition ptn : generator.getInitialCertificates()) {
+			_leases.add(new Lease(_leases.size(),ptn.toString()));
+		}
+		Log.log("    Leasing "+_leases.size()+" prefixes of length "+prefixDigitCount);
+		_serverSocket = new ServerSocket(port);
+		Thread acceptor = new Thread(this::acceptConnections,"vdw-coordinator");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return _serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting workers, workers that are still connected see the connection drop
+	 */
+	public void stop() throws IOException {
+		_serverSocket.close();
+	}
+
+	/**
+	 * Waits for every prefix to be searched and returns W(colorCount,sequenceLength) or 0 if there are no prefixes
+	 */
+	public synchronized int awaitResult() throws InterruptedException {
+		while (_doneCount<_leases.size()) {
+			wait();
+		}
+		return _leases.isEmpty() ? 0 : _bestDigitCount+1;
+	}
+
+	protected void acceptConnections() {
+		while (!_serverSocket.isClosed()) {
+			try {
+				Socket socket = _serverSocket.accept();
+				Thread thread = new Thread(() -> serveConnection(socket),"vdw-coordinator-"+socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (!_serverSocket.isClosed()) {
+					System.out.println("    Unable to accept worker: "+e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Answers the requests of one worker until it disconnects, releasing any leases it still holds
+	 */
+	protected void serveConnection(Socket socket) {
+		Object owner = socket;
+		try (Socket s = socket;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(),StandardCharsets.UTF_8));
+				PrintWriter writer = new PrintWriter(s.getOutputStream(),true,StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine())!=null) {
+				writer.println(handleRequest(owner,line.trim().split(" ")));
+			}
+		} catch (IOException e) {
+			Log.log("    Lost worker "+socket.getRemoteSocketAddress()+": "+e);
+		} finally {
+			releaseLeases(owner);
+		}
+	}
+
+	protected String handleRequest(Object owner,String[] request) {
+		try {
+			switch (request[0]) {
+			case HELLO:
+				return INSTANCE+" "+colorCount+" "+sequenceLength+" "+leaseTimeout;
+			case LEASE:
+				return leaseNext(owner);
+			case RENEW:
+				return renewLease(owner,Integer.parseInt(request[1]));
+			case RESULT:
+				completeLease(Integer.parseInt(request[1]),Integer.parseInt(request[2]),Long.parseLong(request[3]),request.length>4 ? request[4] : "");
+				return OK;
+			default:
+				return ERROR+" unknown request "+request[0];
+			}
+		} catch (RuntimeException e) {
+			return ERROR+" "+e;
+		}
+	}
+
+	/**
+	 * Leases the first pending prefix, first making any expired leases pending again.
+	 * If every prefix is leased this waits until one is released or expires, or the last one is done.
+	 */
+	protected synchronized String leaseNext(Object owner) {
+		while (_doneCount<_leases.size()) {
+			long now = System.currentTimeMillis();
+			Lease next = null;
+			long nextExpiryTime = Long.MAX_VALUE;
+			for (Lease lease : _leases) {
+				if (lease.state==Lease.LEASED && lease.expiryTime<=now) {
+					Log.log("    "+lease+" expired");
+					lease.state = Lease.PENDING;
+					lease.owner = null;
+				}
+				if (lease.state==Lease.PENDING && next==null) {
+					next = lease;
+				} else if (lease.state==Lease.LEASED) {
+					nextExpiryTime = Math.min(nextExpiryTime,lease.expiryTime);
+				}
+			}
+			if (next!=null) {
+				next.state = Lease.LEASED;
+				next.owner = owner;
+				next.expiryTime = now + leaseTimeout;
+				return PREFIX+" "+next.id+" "+next.prefix;
+			}
+			try {
+				wait(nextExpiryTime-now);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return ERROR+" interrupted";
+			}
+		}
+		return DONE+" "+(_bestDigitCount+1);
+	}
+
+	protected synchronized String renewLease(Object owner,int id) {
+		Lease lease = _leases.get(id);
+		if (lease.state!=Lease.LEASED || lease.owner!=owner) {
+			return LOST;
+		}
+		lease.expiryTime = System.currentTimeMillis() + leaseTimeout;
+		return OK;
+	}
+
+	protected synchronized void completeLease(int id,int maxDigitCount,long certCount,String certificate) {
+		Lease lease = _leases.get(id);
+		if (lease.state==Lease.DONE) {
+			return;
+		}
+		lease.state = Lease.DONE;
+		lease.owner = null;
+		lease.maxDigitCount = maxDigitCount;
+		lease.certCount = certCount;
+		_doneCount++;
+		_certCount += certCount;
+		if (maxDigitCount>_bestDigitCount) {
+			_bestDigitCount = maxDigitCount;
+			_bestCertificate = certificate;
+			System.out.println("    "+toString()+" > "+maxDigitCount+" ["+id+"]");
+		}
+		Log.log("    "+lease+" done "+_doneCount+"/"+_leases.size()+" result="+maxDigitCount+" certificates="+certCount);
+		notifyAll();
+	}
+
+	protected synchronized void releaseLeases(Object owner) {
+		for (Lease lease : _leases) {
+			if (lease.state==Lease.LEASED && lease.owner==owner) {
+				Log.log("    "+lease+" released");
+				lease.state = Lease.PENDING;
+				lease.owner = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the longest certificate reported by the workers
+	 */
+	public synchronized String getBestCertificate() {
+		return _bestCertificate;
+	}
+
+	/**
+	 * Returns the total number of certificates visited by the workers
+	 */
+	public synchronized long getCertCount() {
+		return _certCount;
+	}
+}
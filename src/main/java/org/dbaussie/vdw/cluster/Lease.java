@@ -0,0 +1,34 @@
+package org.dbaussie.vdw.cluster;
+
+/**
+ * A prefix of the search handed out by the Coordinator, all fields are guarded by the coordinator
+ * 
+ * @author dbaussie
+ *
+ */
+public class Lease {
+
+	// constants
+	final static public int PENDING = 0;
+	final static public int LEASED = 1;
+	final static public int DONE = 2;
+
+	// properties
+	final public int id;
+	final public String prefix; // the digit string every certificate searched under this lease starts with
+	public int state = PENDING;
+	public Object owner; // the connection holding the lease
+	public long expiryTime; // when a leased prefix is handed to someone else unless renewed
+	public int maxDigitCount; // the longest certificate found under the prefix once done
+	public long certCount;
+
+	public Lease(int id,String prefix) {
+		this.id = id;
+		this.prefix = prefix;
+	}
+
+	@Override
+	public String toString() {
+		return "Lease ["+id+"] "+prefix;
+	}
+}
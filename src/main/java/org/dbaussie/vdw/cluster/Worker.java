@@ -0,0 +1,157 @@
+package org.dbaussie.vdw.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Leases prefixes from a Coordinator and searches each one with all the cores of this machine until there are none left.
+ * While searching the lease is renewed from a background thread so that it only expires if the worker dies or hangs.
+ * 
+ * @author dbaussie
+ *
+ */
+public class Worker {
+
+	// properties
+	final public String host;
+	final public int port;
+	public int parallelism = Runtime.getRuntime().availableProcessors();
+
+	// attributes
+	protected Socket _socket;
+	protected BufferedReader _reader;
+	protected PrintWriter _writer;
+	protected int _colorCount;
+	protected int _sequenceLength;
+	protected long _leaseTimeout;
+	protected int _leaseCount;
+
+	static public void main(String[] argv) throws Exception {
+		Log.enabled = true;
+		Worker worker = new Worker(argv.length>0 ? argv[0] : "localhost",argv.length>1 ? Integer.parseInt(argv[1]) : 7640);
+		if (argv.length>2) {
+			worker.parallelism = Integer.parseInt(argv[2]);
+		}
+		int result = worker.run();
+		System.out.println("\nSearched "+worker._leaseCount+" prefixes, W("+worker._colorCount+","+worker._sequenceLength+") = "+result);
+	}
+
+	public Worker(String host,int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Searches leased prefixes until the coordinator has no more work and returns the final result
+	 */
+	public int run() throws IOException {
+		try (Socket socket = new Socket(host,port)) {
+			_socket = socket;
+			_reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),StandardCharsets.UTF_8));
+			_writer = new PrintWriter(socket.getOutputStream(),true,StandardCharsets.UTF_8);
+			String[] instance = request(Coordinator.HELLO);
+			_colorCount = Integer.parseInt(instance[1]);
+			_sequenceLength = Integer.parseInt(instance[2]);
+			_leaseTimeout = Long.parseLong(instance[3]);
+			while (true) {
+				String[] reply = request(Coordinator.LEASE);
+				switch (reply[0]) {
+				case Coordinator.PREFIX:
+					searchPrefix(Integer.parseInt(reply[1]),reply[2]);
+					_leaseCount++;
+					break;
+				case Coordinator.DONE:
+					return Integer.parseInt(reply[1]);
+				default:
+					throw new IOException("Unexpected reply "+String.join(" ",reply));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a request and waits for its reply, requests from the search and renewal threads take turns
+	 */
+	protected synchronized String[] request(String request) throws IOException {
+		_writer.println(request);
+		String reply = _reader.readLine();
+		if (reply==null) {
+			throw new IOException("Coordinator closed the connection");
+		}
+		return reply.split(" ");
+	}
+
+	protected void searchPrefix(int id,String prefix) throws IOException {
+		ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r,"vdw-worker-renew");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long renewInterval = Math.max(1,_leaseTimeout/3);
+		renewer.scheduleAtFixedRate(() -> {
+			try {
+				String[] reply = request(Coordinator.RENEW+" "+id);
+				if (reply[0].equals(Coordinator.LOST)) {
+					Log.log("    Lease "+id+" was lost, finishing it anyway");
+				}
+			} catch (IOException e) {
+				Log.log("    Unable to renew lease "+id+": "+e);
+			}
+		},renewInterval,renewInterval,TimeUnit.MILLISECONDS);
+		PrefixSearch search;
+		try {
+			search = new PrefixSearch(_colorCount,_sequenceLength,prefix);
+			search.parallelism = parallelism;
+			search.calculate();
+		} finally {
+			renewer.shutdownNow();
+		}
+		Partition certificate = search.getBestCertificate();
+		int maxDigitCount = Math.max(search.getResult()-1,prefix.length());
+		request(Coordinator.RESULT+" "+id+" "+maxDigitCount+" "+search.getVisitedCount()+" "+(certificate!=null ? certificate : prefix));
+	}
+
+	/**
+	 * Searches every extension of a single prefix with the fork/join engine
+	 */
+	static protected class PrefixSearch extends ThreadedVdwGenerator {
+
+		// attributes
+		final private String _prefix;
+
+		public PrefixSearch(int colorCount,int sequenceLength,String prefix) {
+			super(colorCount,sequenceLength,prefix.length());
+			_prefix = prefix;
+			registerMetrics = false;
+			reportInterval = 0;
+			estimateProbeCount = 0;
+		}
+
+		@Override
+		protected boolean initialize() {
+			_result = -1;
+			_checker = createChecker();
+			Partition ptn = _checker.createPartition(initialDigitCount);
+			ptn.setValue(_prefix);
+			_initialCertificates = new ArrayList<Partition>();
+			_initialCertificates.add(ptn);
+			return true;
+		}
+
+		public synchronized Partition getBestCertificate() {
+			return _bestCertificate;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.dbaussie.vdw.metrics;
+
+import java.util.Arrays;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Counters updated by a single search worker for every node it visits.
+ * 
+ * The fields are plain (not volatile or atomic) so updating them costs no more than a local variable, which is why
+ * each worker must own its counters. Workers periodically add them to the shared SearchMetrics which resets them.
+ * 
+ * @author dbaussie
+ *
+ */
+public class SearchCounters {
+
+	// properties
+	public long nodeCount; // the number of certificates visited
+	public long backtrackCount; // the number of positions backtracked over
+	public int maxDepth; // the longest certificate visited, kept across resets
+	public long[] depthHistogram = new long[Partition.BLOCK_SIZE]; // the number of certificates visited with each digit count
+
+	/**
+	 * Records a visit to a certificate with the given number of digits
+	 */
+	public void visit(int depth) {
+		nodeCount++;
+		if (depth>maxDepth) {
+			maxDepth = depth;
+			if (depth>=depthHistogram.length) {
+				depthHistogram = Arrays.copyOf(depthHistogram,depth+Partition.BLOCK_SIZE);
+			}
+		}
+		depthHistogram[depth]++;
+	}
+
+	/**
+	 * Clears all the counts except for maxDepth
+	 */
+	public void reset() {
+		nodeCount = 0;
+		backtrackCount = 0;
+		Arrays.fill(depthHistogram,0,maxDepth+1,0);
+	}
+}
@@ -0,0 +1,202 @@
+package org.dbaussie.vdw.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.dbaussie.vdw.logging.Log;
+
+/**
+ * Progress metrics for a search shared by all of its workers.
+ * 
+ * Workers never touch the metrics for each node, they count into their own SearchCounters and add them here every few
+ * thousand nodes. The totals are striped (LongAdder) so workers adding at the same time do not contend.
+ * The metrics are read by an optional reporter thread that prints the throughput and by JMX clients (eg jconsole)
+ * through the SearchMetricsMBean interface. Starting the platform MBean server can take most of a second so the MBean
+ * is registered on the metrics thread rather than holding up the search.
+ * 
+ * @author dbaussie
+ *
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+	// constants
+	final static public String DOMAIN = "org.dbaussie.vdw";
+
+	// properties
+	final public String instance;
+
+	// attributes
+	protected final LongAdder _nodeCount = new LongAdder();
+	protected final LongAdder _backtrackCount = new LongAdder();
+	protected final LongAccumulator _maxDepth = new LongAccumulator(Math::max,0);
+	protected volatile LongAdder[] _depthHistogram = new LongAdder[0];
+	protected long _startTime;
+	protected ObjectName _objectName; // only accessed from the metrics thread
+	protected ScheduledExecutorService _executor; // the metrics thread
+
+	public SearchMetrics(String instance) {
+		this.instance = instance;
+		_startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Adds a worker's counters to the totals and resets them
+	 */
+	public void add(SearchCounters counters) {
+		_nodeCount.add(counters.nodeCount);
+		_backtrackCount.add(counters.backtrackCount);
+		_maxDepth.accumulate(counters.maxDepth);
+		LongAdder[] histogram = getHistogram(counters.maxDepth+1);
+		long[] depthCounts = counters.depthHistogram;
+		for (int depth=0; depth<=counters.maxDepth; depth++) {
+			if (depthCounts[depth]!=0) {
+				histogram[depth].add(depthCounts[depth]);
+			}
+		}
+		counters.reset();
+	}
+
+	/**
+	 * Returns a histogram with at least the given length, the adders are shared with any smaller histogram so no counts are lost
+	 */
+	protected LongAdder[] getHistogram(int length) {
+		LongAdder[] histogram = _depthHistogram;
+		if (histogram.length>=length) {
+			return histogram;
+		}
+		synchronized (this) {
+			histogram = _depthHistogram;
+			if (histogram.length<length) {
+				LongAdder[] newHistogram = new LongAdder[length];
+				System.arraycopy(histogram,0,newHistogram,0,histogram.length);
+				for (int depth=histogram.length; depth<length; depth++) {
+					newHistogram[depth] = new LongAdder();
+				}
+				_depthHistogram = histogram = newHistogram;
+			}
+			return histogram;
+		}
+	}
+
+	/**
+	 * Registers the metrics as an MBean and if reportInterval is positive starts printing them every reportInterval seconds
+	 */
+	public void start(boolean register,int reportInterval) {
+		if (!register && reportInterval<=0) {
+			return;
+		}
+		_executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r,"vdw-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (register) {
+			_executor.execute(this::register);
+		}
+		if (reportInterval>0) {
+			_executor.scheduleAtFixedRate(new Runnable() {
+				private long _lastNodeCount;
+				@Override
+				public void run() {
+					long nodeCount = getNodeCount();
+					System.out.println("    "+SearchMetrics.this.toString()+" rate="+(nodeCount-_lastNodeCount)/reportInterval+"/s");
+					_lastNodeCount = nodeCount;
+				}
+			},reportInterval,reportInterval,TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stops the reporter and unregisters the MBean, waiting for the metrics thread to finish
+	 */
+	public void stop() {
+		if (_executor==null) {
+			return;
+		}
+		// periodic reports are cancelled by shutdown but tasks already submitted still run in order
+		_executor.execute(this::unregister);
+		_executor.shutdown();
+		try {
+			_executor.awaitTermination(1,TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_executor = null;
+	}
+
+	protected void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN+":type=SearchMetrics,name="+ObjectName.quote(instance)+",id="+System.identityHashCode(this));
+			server.registerMBean(this,objectName);
+			_objectName = objectName;
+		} catch (Exception e) {
+			Log.log("    Unable to register search metrics: "+e);
+		}
+	}
+
+	protected void unregister() {
+		if (_objectName==null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(_objectName);
+		} catch (Exception e) {
+			Log.log("    Unable to unregister search metrics: "+e);
+		}
+		_objectName = null;
+	}
+
+	@Override
+	public String getInstance() {
+		return instance;
+	}
+
+	@Override
+	public long getNodeCount() {
+		return _nodeCount.sum();
+	}
+
+	@Override
+	public long getBacktrackCount() {
+		return _backtrackCount.sum();
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return (int)_maxDepth.get();
+	}
+
+	@Override
+	public long[] getDepthHistogram() {
+		LongAdder[] histogram = _depthHistogram;
+		long[] result = new long[histogram.length];
+		for (int depth=0; depth<histogram.length; depth++) {
+			result[depth] = histogram[depth].sum();
+		}
+		return result;
+	}
+
+	@Override
+	public long getElapsedSeconds() {
+		return (System.currentTimeMillis() - _startTime) / 1000;
+	}
+
+	@Override
+	public double getNodesPerSecond() {
+		long elapsed = System.currentTimeMillis() - _startTime;
+		return elapsed>0 ? getNodeCount() * 1000.0 / elapsed : 0;
+	}
+
+	@Override
+	public String toString() {
+		return instance+" nodes="+getNodeCount()+" backtracks="+getBacktrackCount()+" maxDepth="+getMaxDepth()+" elapsed="+getElapsedSeconds()+"s";
+	}
+}
@@ -0,0 +1,24 @@
+package org.dbaussie.vdw.metrics;
+
+/**
+ * The management interface of SearchMetrics, registered with the platform MBean server while a search is running
+ * 
+ * @author dbaussie
+ *
+ */
+public interface SearchMetricsMBean {
+
+	public String getInstance();
+
+	public long getNodeCount();
+
+	public long getBacktrackCount();
+
+	public int getMaxDepth();
+
+	public long[] getDepthHistogram();
+
+	public long getElapsedSeconds();
+
+	public double getNodesPerSecond();
+}
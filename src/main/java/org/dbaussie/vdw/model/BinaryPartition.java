@@ -0,0 +1,175 @@
+package org.dbaussie.vdw.model;
+
+/**
+ * A Partition specialized for two colors where every digit is stored as a single bit of a long[] bitset.
+ *
+ * Besides the plain bitset (bit p holds the digit at position p) the partition also maintains 'strided' copies of the digits.
+ * For a stride j and a residue r the strided bitset holds the digits at positions r, r+j, r+2j, ... in consecutive bits.
+ * This means that the digits at positions p-j, p-2j, ..., p-dj are always adjacent bits of one strided bitset, which lets
+ * the checkers test up to 64 differences at once with a few shifts and ANDs (see BinaryAPChecker).
+ *
+ * All the bitsets live in one word array, each starting on a word boundary with a spare word at the end so that a
+ * 64 bit window can be read from any valid bit index. The bit holding each (position,stride) pair is precomputed
+ * so that neither writes nor window reads need any divisions.
+ * Every write updates all strided copies so strideCount should be no larger than needed, ie sequenceLength-1.
+ *
+ * @author dbaussie
+ *
+ */
+public class BinaryPartition extends Partition {
+
+	// constants
+	final static public int WORD_SIZE = 64;
+
+	// properties
+	final public int strideCount; // strided copies are kept for strides 1..strideCount, stride 1 being the plain bitset
+
+	// attributes
+	protected long[] _words; // holds all of the bitsets
+	protected int[] _strideBits; // the bit of _words holding position p in the stride j bitset is at index p*strideCount+j-1
+	protected int _capacity; // the number of digits storage has been allocated for
+
+	public BinaryPartition(int digitCount,int strideCount) {
+		super(2);
+		this.strideCount = Math.max(1,strideCount);
+		ensureCapacity(digitCount);
+		this.digitCount = digitCount;
+	}
+
+	/**
+	 * Copy constructor, the stride bit table never changes once built so it is shared with the original
+	 */
+	protected BinaryPartition(BinaryPartition ptn) {
+		super(2);
+		this.strideCount = ptn.strideCount;
+		this.digitCount = ptn.digitCount;
+		_capacity = ptn._capacity;
+		_strideBits = ptn._strideBits;
+		_words = ptn._words.clone();
+	}
+
+	/**
+	 * Make sure that every strided bitset can hold newDigitCount digits.
+	 * Storage is allocated in multiples of the block size, if we need to reallocate then the old digits are copied over.
+	 */
+	private void ensureCapacity(int newDigitCount) {
+		if (newDigitCount<=_capacity && _words!=null) {
+			return;
+		}
+		int oldCapacity = _capacity;
+		int blockCount = Math.max(newDigitCount-1,0) / BLOCK_SIZE + 1;
+		int newCapacity = BLOCK_SIZE * blockCount;
+		// lay out the strided bitsets one after another
+		int[] base = new int[strideCount+1];
+		int wordCount = 0;
+		for (int j=1; j<=strideCount; j++) {
+			base[j] = wordCount;
+			wordCount += j * (newCapacity/j/WORD_SIZE + 2);
+		}
+		long[] oldWords = _words;
+		int[] oldStrideBits = _strideBits;
+		_words = new long[wordCount];
+		_strideBits = new int[newCapacity*strideCount];
+		for (int j=1; j<=strideCount; j++) {
+			int residueWords = newCapacity/j/WORD_SIZE + 2;
+			for (int p=0; p<newCapacity; p++) {
+				int bit = (base[j] + (p%j)*residueWords) * WORD_SIZE + p/j;
+				_strideBits[p*strideCount+j-1] = bit;
+			}
+		}
+		for (int p=0; p<oldCapacity; p++) {
+			int oldBit = oldStrideBits[p*strideCount];
+			setDigitAt(p,(int)(oldWords[oldBit>>>6] >>> oldBit) & 1);
+		}
+		_capacity = newCapacity;
+	}
+
+	/**
+	 * Returns the array holding all of the bitsets
+	 */
+	public long[] getWords() {
+		return _words;
+	}
+
+	/**
+	 * Returns the bit of getWords() that holds the given position in the bitset for the given stride.
+	 * The digits at position-stride, position-2*stride, ... are held in the bits immediately below this one.
+	 */
+	public int getStrideBit(int position,int stride) {
+		return _strideBits[position*strideCount+stride-1];
+	}
+
+	@Override
+	public void setDigitCount(int newDigitCount) {
+		ensureCapacity(newDigitCount);
+		for (int d=digitCount; d<newDigitCount; d++) {
+			setDigitAt(d,0);
+		}
+		this.digitCount = newDigitCount;
+	}
+
+	@Override
+	public int getDigit(int position) {
+		int bit = _strideBits[position*strideCount];
+		return (int)(_words[bit>>>6] >>> bit) & 1;
+	}
+
+	@Override
+	public int getLastDigit() {
+		return getDigit(digitCount-1);
+	}
+
+	@Override
+	public void setDigitAt(int position,int value) {
+		long valueMask = -(long)value;
+		int offset = position*strideCount;
+		for (int j=0; j<strideCount; j++) {
+			int bit = _strideBits[offset+j];
+			long mask = 1L << bit;
+			int word = bit >>> 6;
+			_words[word] = (_words[word] & ~mask) | (valueMask & mask);
+		}
+	}
+
+	@Override
+	public void setLastDigit(int value) {
+		setDigitAt(digitCount-1,value);
+	}
+
+	/**
+	 * Returns a copy of the digits unpacked into an int array.
+	 * Unlike the base class changes to the returned array are not reflected in the partition.
+	 */
+	@Override
+	public int[] getUnderlyingArray() {
+		int[] result = new int[digitCount];
+		for (int d=0; d<digitCount; d++) {
+			result[d] = getDigit(d);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean increment() {
+		for (int d=digitCount-1; d>=0; d--) {
+			if (getDigit(d)==0) {
+				setDigitAt(d,1);
+				return true;
+			}
+			setDigitAt(d,0);
+		}
+		return false;
+	}
+
+	@Override
+	public void maskTrailingDigits(int position) {
+		for (int i=position+1; i<digitCount; i++) {
+			setDigitAt(i,1);
+		}
+	}
+
+	@Override
+	public BinaryPartition clone() {
+		return new BinaryPartition(this);
+	}
+}
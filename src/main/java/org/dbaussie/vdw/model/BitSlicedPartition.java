@@ -0,0 +1,139 @@
+package org.dbaussie.vdw.model;
+
+import java.util.Arrays;
+
+/**
+ * A Partition for any number of colors stored as one bit plane per color, ie a transposed layout.
+ * 
+ * Plane c is a BinaryPartition with a 1 at every position holding color c, including its strided copies, so the
+ * word parallel tests of BinaryAPChecker can be run on each color in turn (see BitSlicedAPChecker).
+ * The digits themselves are also kept in a byte array so that reading a digit does not have to search the planes.
+ * Every write touches two planes, so as with BinaryPartition strideCount should be no larger than needed.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BitSlicedPartition extends Partition {
+
+	// properties
+	final public int strideCount;
+
+	// attributes
+	protected BinaryPartition[] _planes; // plane c has a 1 at every position holding color c
+	protected byte[] _digits;
+
+	public BitSlicedPartition(int colorCount,int digitCount,int strideCount) {
+		super(colorCount);
+		if (colorCount>BytePartition.MAX_COLOR_COUNT) {
+			throw new IllegalArgumentException("A BitSlicedPartition holds at most "+BytePartition.MAX_COLOR_COUNT+" colors not "+colorCount);
+		}
+		this.strideCount = Math.max(1,strideCount);
+		_planes = new BinaryPartition[colorCount];
+		for (int c=0; c<colorCount; c++) {
+			_planes[c] = new BinaryPartition(0,this.strideCount);
+		}
+		_digits = new byte[Math.max(digitCount,BytePartition.MIN_CAPACITY)];
+		setDigitCount(digitCount);
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	protected BitSlicedPartition(BitSlicedPartition ptn) {
+		super(ptn.getColorCount());
+		this.strideCount = ptn.strideCount;
+		this.digitCount = ptn.digitCount;
+		_planes = new BinaryPartition[ptn._planes.length];
+		for (int c=0; c<_planes.length; c++) {
+			_planes[c] = ptn._planes[c].clone();
+		}
+		_digits = Arrays.copyOf(ptn._digits,Math.max(ptn.digitCount,BytePartition.MIN_CAPACITY));
+	}
+
+	/**
+	 * Returns the bit plane of a color
+	 */
+	public BinaryPartition getPlane(int color) {
+		return _planes[color];
+	}
+
+	@Override
+	public void setDigitCount(int newDigitCount) {
+		if (newDigitCount>_digits.length) {
+			_digits = Arrays.copyOf(_digits,Math.max(newDigitCount,_digits.length+(_digits.length>>1)));
+		}
+		for (BinaryPartition plane : _planes) {
+			plane.setDigitCount(newDigitCount);
+		}
+		// new digits are 0 so they belong in the plane of color 0
+		for (int d=digitCount; d<newDigitCount; d++) {
+			_digits[d] = 0;
+			_planes[0].setDigitAt(d,1);
+		}
+		this.digitCount = newDigitCount;
+	}
+
+	@Override
+	public int getDigit(int position) {
+		return _digits[position];
+	}
+
+	@Override
+	public int getLastDigit() {
+		return _digits[digitCount-1];
+	}
+
+	@Override
+	public void setDigitAt(int position,int value) {
+		int oldValue = _digits[position];
+		if (oldValue!=value) {
+			_planes[oldValue].setDigitAt(position,0);
+			_planes[value].setDigitAt(position,1);
+			_digits[position] = (byte)value;
+		}
+	}
+
+	@Override
+	public void setLastDigit(int value) {
+		setDigitAt(digitCount-1,value);
+	}
+
+	/**
+	 * Returns a copy of the digits widened to an int array.
+	 * Unlike the base class changes to the returned array are not reflected in the partition.
+	 */
+	@Override
+	public int[] getUnderlyingArray() {
+		int[] result = new int[digitCount];
+		for (int d=0; d<digitCount; d++) {
+			result[d] = _digits[d];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean increment() {
+		for (int d=digitCount-1; d>=0; d--) {
+			int newDigit = _digits[d] + 1;
+			if (newDigit==getColorCount()) {
+				setDigitAt(d,0);
+			} else {
+				setDigitAt(d,newDigit);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void maskTrailingDigits(int position) {
+		for (int i=position+1; i<digitCount; i++) {
+			setDigitAt(i,getColorCount()-1);
+		}
+	}
+
+	@Override
+	public BitSlicedPartition clone() {
+		return new BitSlicedPartition(this);
+	}
+}
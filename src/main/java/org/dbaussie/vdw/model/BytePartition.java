@@ -0,0 +1,120 @@
+package org.dbaussie.vdw.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact Partition storing one digit per byte, for up to MAX_COLOR_COUNT colors.
+ * 
+ * Unlike the base class, which allocates whole blocks of ints, the digit array only grows as far as needed and a clone
+ * copies just the digits in use. A search prefix of a few hundred digits then takes a few cache lines rather than 4KB,
+ * so a worker's partition and the clones it keeps for new best certificates stay in L1.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BytePartition extends Partition {
+
+	// constants
+	final static public int MAX_COLOR_COUNT = Byte.MAX_VALUE;
+	final static public int MIN_CAPACITY = 64; // one cache line
+
+	// attributes
+	protected byte[] _digits; // the digit at each position, only the first digitCount are valid
+
+	public BytePartition(int colorCount,int digitCount) {
+		super(colorCount);
+		if (colorCount>MAX_COLOR_COUNT) {
+			throw new IllegalArgumentException("A BytePartition holds at most "+MAX_COLOR_COUNT+" colors not "+colorCount);
+		}
+		_digits = new byte[Math.max(digitCount,MIN_CAPACITY)];
+		this.digitCount = digitCount;
+	}
+
+	/**
+	 * Copy constructor, only the digits in use are copied
+	 */
+	protected BytePartition(BytePartition ptn) {
+		super(ptn.getColorCount());
+		_digits = Arrays.copyOf(ptn._digits,Math.max(ptn.digitCount,MIN_CAPACITY));
+		this.digitCount = ptn.digitCount;
+	}
+
+	/**
+	 * Returns the array holding the digits, it may be longer than digitCount and is replaced when the partition grows
+	 */
+	public byte[] getDigits() {
+		return _digits;
+	}
+
+	@Override
+	public void setDigitCount(int newDigitCount) {
+		if (newDigitCount>_digits.length) {
+			// grow by half again so that extending one digit at a time stays linear
+			_digits = Arrays.copyOf(_digits,Math.max(newDigitCount,_digits.length+(_digits.length>>1)));
+		}
+		if (newDigitCount>digitCount) {
+			Arrays.fill(_digits,digitCount,newDigitCount,(byte)0);
+		}
+		this.digitCount = newDigitCount;
+	}
+
+	@Override
+	public int getDigit(int position) {
+		return _digits[position];
+	}
+
+	@Override
+	public int getLastDigit() {
+		return _digits[digitCount-1];
+	}
+
+	@Override
+	public void setDigitAt(int position,int value) {
+		_digits[position] = (byte)value;
+	}
+
+	@Override
+	public void setLastDigit(int value) {
+		_digits[digitCount-1] = (byte)value;
+	}
+
+	/**
+	 * Returns a copy of the digits widened to an int array.
+	 * Unlike the base class changes to the returned array are not reflected in the partition.
+	 */
+	@Override
+	public int[] getUnderlyingArray() {
+		int[] result = new int[digitCount];
+		for (int d=0; d<digitCount; d++) {
+			result[d] = _digits[d];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean increment() {
+		final int colorCount = getColorCount();
+		for (int d=digitCount-1; d>=0; d--) {
+			int newDigit = _digits[d] + 1;
+			if (newDigit==colorCount) {
+				_digits[d] = 0;
+			} else {
+				_digits[d] = (byte)newDigit;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void maskTrailingDigits(int position) {
+		if (position+1<digitCount) {
+			Arrays.fill(_digits,position+1,digitCount,(byte)(getColorCount()-1));
+		}
+	}
+
+	@Override
+	public BytePartition clone() {
+		return new BytePartition(this);
+	}
+}
@@ -44,9 +44,24 @@ public class Partition {
 
 	public Partition(int colorCount,int digitCount) {
 		this.colorCount = colorCount;
-		ensureCapacity(this.digitCount);
+		ensureCapacity(digitCount);
 		this.digitCount = digitCount;
 	}
+
+	/**
+	 * Constructor for subclasses that provide their own digit storage.
+	 * No digit array is allocated.
+	 */
+	protected Partition(int colorCount) {
+		this.colorCount = colorCount;
+	}
+
+	/**
+	 * Returns the number of colors (ie the base k of the k-ary integer)
+	 */
+	public int getColorCount() {
+		return colorCount;
+	}
 	
 	/**
 	 * Make sure that we have allocated enough blocks to hold the desired digitCount.
@@ -126,7 +141,7 @@ public class Partition {
 	 * @returns the specified char
 	 */
 	public char getDigitChar(int position) {
-		int digit = _digitColors[position];
+		int digit = getDigit(position);
 		return digit<10 ? (char)('0'+digit) : (char)('A'+digit-10);
 	}
 	
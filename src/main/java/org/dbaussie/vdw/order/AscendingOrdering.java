@@ -0,0 +1,30 @@
+package org.dbaussie.vdw.order;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Tries the colors in ascending order, as the exhaustive generators do
+ * 
+ * @author dbaussie
+ *
+ */
+public class AscendingOrdering extends ValueOrdering {
+
+	public AscendingOrdering(int colorCount,int sequenceLength) {
+		super(colorCount,sequenceLength);
+	}
+
+	@Override
+	public int orderColors(Partition ptn,int digitCount,int allowedColors,int[] colors) {
+		int count = 0;
+		for (int remaining=allowedColors; remaining!=0; remaining&=remaining-1) {
+			colors[count++] = Integer.numberOfTrailingZeros(remaining);
+		}
+		return count;
+	}
+
+	@Override
+	public String getName() {
+		return ASCENDING;
+	}
+}
@@ -0,0 +1,72 @@
+package org.dbaussie.vdw.order;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Tries first the colors that take the fewest options away from the digits ahead, ties broken at random.
+ * 
+ * A color c at position p forbids c at position p+d for every difference d for which the t-2 digits before p at distance d
+ * already have color c, so the colors completing the fewest such partial APs are tried first. Counting them looks at
+ * the O(p) differences back from p for each color.
+ * 
+ * @author dbaussie
+ *
+ */
+public class LeastConstrainingOrdering extends RandomOrdering {
+
+	// attributes
+	protected int[] _constraintCounts;
+
+	public LeastConstrainingOrdering(int colorCount,int sequenceLength,long seed) {
+		super(colorCount,sequenceLength,seed);
+		_constraintCounts = new int[colorCount];
+	}
+
+	@Override
+	public int orderColors(Partition ptn,int digitCount,int allowedColors,int[] colors) {
+		// shuffle first so the stable sort below breaks ties at random
+		int count = super.orderColors(ptn,digitCount,allowedColors,colors);
+		if (count<2) {
+			return count;
+		}
+		int position = digitCount - 1;
+		for (int i=0; i<count; i++) {
+			_constraintCounts[colors[i]] = countConstraints(ptn,position,colors[i]);
+		}
+		for (int i=1; i<count; i++) {
+			int color = colors[i];
+			int j = i;
+			for (; j>0 && _constraintCounts[colors[j-1]]>_constraintCounts[color]; j--) {
+				colors[j] = colors[j-1];
+			}
+			colors[j] = color;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of differences d for which placing the color at the position forbids it at position+d
+	 */
+	protected int countConstraints(Partition ptn,int position,int color) {
+		int count = 0;
+		final int span = sequenceLength - 2;
+		if (span<=0) {
+			return 0;
+		}
+		for (int d=1; d*span<=position; d++) {
+			int i = 1;
+			while (i<=span && ptn.getDigit(position-i*d)==color) {
+				i++;
+			}
+			if (i>span) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String getName() {
+		return LEAST_CONSTRAINING;
+	}
+}
@@ -0,0 +1,44 @@
+package org.dbaussie.vdw.order;
+
+import java.util.Random;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Tries the colors in a random order, repeatable given the seed
+ * 
+ * @author dbaussie
+ *
+ */
+public class RandomOrdering extends AscendingOrdering {
+
+	// attributes
+	protected Random _random;
+
+	public RandomOrdering(int colorCount,int sequenceLength,long seed) {
+		super(colorCount,sequenceLength);
+		_random = new Random(seed);
+	}
+
+	@Override
+	public int orderColors(Partition ptn,int digitCount,int allowedColors,int[] colors) {
+		int count = super.orderColors(ptn,digitCount,allowedColors,colors);
+		for (int i=count-1; i>0; i--) {
+			int j = _random.nextInt(i+1);
+			int color = colors[i];
+			colors[i] = colors[j];
+			colors[j] = color;
+		}
+		return count;
+	}
+
+	@Override
+	public boolean isRandomized() {
+		return true;
+	}
+
+	@Override
+	public String getName() {
+		return RANDOM;
+	}
+}
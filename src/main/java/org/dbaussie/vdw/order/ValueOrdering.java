@@ -0,0 +1,66 @@
+package org.dbaussie.vdw.order;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Decides the order in which a search tries the allowed colors for the next digit.
+ * 
+ * The exhaustive generators always try colors in ascending order as their backtracking (and work donation and checkpointing)
+ * depend on it, the orderings are for searches that only want to find a long certificate quickly, see PortfolioVdwGenerator.
+ * An ordering may keep state, eg a random number generator, so every search thread needs its own.
+ * 
+ * @author dbaussie
+ *
+ */
+abstract public class ValueOrdering {
+
+	// constants
+	final static public String ASCENDING = "ascending";
+	final static public String RANDOM = "random";
+	final static public String LEAST_CONSTRAINING = "least-constraining";
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+
+	protected ValueOrdering(int colorCount,int sequenceLength) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+	}
+
+	/**
+	 * Creates an ordering by name, seed is used by the orderings that make random choices
+	 */
+	static public ValueOrdering create(String name,int colorCount,int sequenceLength,long seed) {
+		switch (name) {
+		case ASCENDING:
+			return new AscendingOrdering(colorCount,sequenceLength);
+		case RANDOM:
+			return new RandomOrdering(colorCount,sequenceLength,seed);
+		case LEAST_CONSTRAINING:
+			return new LeastConstrainingOrdering(colorCount,sequenceLength,seed);
+		default:
+			throw new IllegalArgumentException("Unknown value ordering "+name);
+		}
+	}
+
+	/**
+	 * Writes the allowed colors for the last of the first digitCount digits into colors in the order they should be tried
+	 * and returns how many there are. The earlier digits are set, the last digit can be changed freely.
+	 */
+	abstract public int orderColors(Partition ptn,int digitCount,int allowedColors,int[] colors);
+
+	/**
+	 * Returns true if the ordering makes random choices, restarting a search is only useful if it does
+	 */
+	public boolean isRandomized() {
+		return false;
+	}
+
+	abstract public String getName();
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+}
@@ -0,0 +1,137 @@
+package org.dbaussie.vdw.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Streams the certificates recorded by a CertificateWriter back as partitions, one block in memory at a time.
+ * A block cut short (eg by a crash while it was written) ends the stream.
+ * 
+ * @author dbaussie
+ *
+ */
+public class CertificateReader implements Iterator<Partition>, Closeable {
+
+	// properties
+	final public String path;
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int minDigitCount; // as given to the writer, 0 if only the longest certificates were recorded
+	final public int bitsPerDigit;
+
+	// attributes
+	protected FileChannel _channel;
+	protected ByteBuffer _block = ByteBuffer.allocate(0); // the uncompressed records of the current block not yet returned
+	protected int _blockCertificateCount; // the number of certificates left in the current block
+	protected Inflater _inflater = new Inflater();
+
+	public CertificateReader(String path) throws IOException {
+		this.path = path;
+		_channel = FileChannel.open(Paths.get(path),StandardOpenOption.READ);
+		ByteBuffer header = ByteBuffer.allocate(CertificateWriter.HEADER_SIZE);
+		if (!readFully(header) || header.getInt(0)!=CertificateWriter.MAGIC || header.getInt(4)!=CertificateWriter.VERSION) {
+			_channel.close();
+			throw new IOException(path+" is not a certificate file");
+		}
+		header.position(8);
+		colorCount = header.getInt();
+		sequenceLength = header.getInt();
+		bitsPerDigit = header.getInt();
+		minDigitCount = header.getInt();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (_blockCertificateCount==0) {
+			try {
+				readBlock();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read "+path,e);
+			}
+		}
+		return _blockCertificateCount>0;
+	}
+
+	@Override
+	public Partition next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		_blockCertificateCount--;
+		int digitCount = _block.getInt();
+		Partition ptn = new Partition(colorCount,0);
+		ptn.setDigitCount(digitCount);
+		int start = _block.position();
+		for (int d=0; d<digitCount; d++) {
+			int bit = d*bitsPerDigit;
+			int digit = 0;
+			for (int b=0; b<bitsPerDigit; b++, bit++) {
+				digit |= ((_block.get(start+(bit>>>3)) >>> (bit & 7)) & 1) << b;
+			}
+			ptn.setDigitAt(d,digit);
+		}
+		_block.position(start+CertificateWriter.getRecordSize(digitCount,bitsPerDigit)-4);
+		return ptn;
+	}
+
+	@Override
+	public void close() throws IOException {
+		_channel.close();
+		_inflater.end();
+	}
+
+	/**
+	 * Reads and inflates the next block, leaving no certificates in the block at the end of the file
+	 */
+	protected void readBlock() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(CertificateWriter.BLOCK_HEADER_SIZE);
+		if (!_channel.isOpen() || !readFully(header)) {
+			return;
+		}
+		int rawLength = header.getInt(0);
+		int compressedLength = header.getInt(4);
+		int certificateCount = header.getInt(8);
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+		if (!readFully(compressed)) {
+			return;
+		}
+		byte[] raw = new byte[rawLength];
+		_inflater.reset();
+		_inflater.setInput(compressed.array());
+		try {
+			int length = 0;
+			while (length<rawLength && !_inflater.finished()) {
+				length += _inflater.inflate(raw,length,rawLength-length);
+			}
+			if (length!=rawLength) {
+				throw new IOException("Truncated block in "+path);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt block in "+path,e);
+		}
+		_block = ByteBuffer.wrap(raw);
+		_blockCertificateCount = certificateCount;
+	}
+
+	/**
+	 * Fills the buffer from the file returning false if the end of the file comes first
+	 */
+	private boolean readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (_channel.read(buffer)<0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,275 @@
+package org.dbaussie.vdw.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.util.ArrayUtil;
+
+/**
+ * Records certificates to a compact binary file as the search visits them, either every certificate with at least
+ * minDigitCount digits or, when minDigitCount is 0, every certificate of the longest length found.
+ * 
+ * Only one certificate of each symmetry class (color permutations and reversal) is kept, the one that is its own leader,
+ * ie whose colors first appear in descending order and which is no greater than its normalized reverse. As the search
+ * visits every certificate whose colors are normalized, each class is recorded exactly once without having to remember
+ * what has been written.
+ * 
+ * The file holds a header followed by deflated blocks, each holding the digit count and packed digits of a number of
+ * certificates with bitsPerDigit bits per digit. Workers only pack the digits and hand them to a background thread
+ * through a bounded queue, they wait only if the writer falls a full queue behind.
+ * When a longer certificate arrives in longest mode the file is cut back to its header.
+ * 
+ * @author dbaussie
+ *
+ */
+public class CertificateWriter implements Closeable {
+
+	// constants
+	final static public int MAGIC = 0x56445753; // "VDWS"
+	final static public int VERSION = 1;
+	final static public int HEADER_SIZE = 24;
+	final static public int BLOCK_HEADER_SIZE = 12;
+	final static public int BLOCK_SIZE = 1 << 16; // the number of uncompressed bytes collected before a block is written
+	final static public int QUEUE_CAPACITY = 1 << 12;
+	final static private byte[] END = new byte[0]; // tells the writer thread to finish
+
+	// properties
+	final public String path;
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int minDigitCount; // record every certificate with at least this many digits, 0 for the longest only
+	final public int bitsPerDigit;
+
+	// attributes
+	protected BlockingQueue<byte[]> _queue = new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+	protected volatile int _longestDigitCount; // the longest certificate added so far
+	protected FileChannel _channel;
+	protected Thread _thread;
+	protected IOException _failure; // the error that stopped the writer thread
+	protected ByteBuffer _block = ByteBuffer.allocate(BLOCK_SIZE);
+	protected int _blockCertificateCount;
+	protected int _fileDigitCount; // the length of the certificates in the file in longest mode
+	protected long _certificateCount; // the number of certificates in the file
+	protected Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+	protected byte[] _compressed = new byte[BLOCK_SIZE];
+
+	/**
+	 * Creates or truncates the file and starts the writer thread
+	 */
+	public CertificateWriter(String path,int colorCount,int sequenceLength,int minDigitCount) throws IOException {
+		this.path = path;
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.minDigitCount = minDigitCount;
+		this.bitsPerDigit = Math.max(1,32-Integer.numberOfLeadingZeros(colorCount-1));
+		_channel = FileChannel.open(Paths.get(path),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(colorCount);
+		header.putInt(sequenceLength);
+		header.putInt(bitsPerDigit);
+		header.putInt(minDigitCount);
+		writeFully(header.flip());
+		_thread = new Thread(this::run,"certificate-writer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Returns true if a certificate with digitCount digits would be recorded (if it is its own leader).
+	 * This is cheap enough to call for every certificate the search visits.
+	 */
+	public boolean accepts(int digitCount) {
+		return minDigitCount>0 ? digitCount>=minDigitCount : digitCount>=_longestDigitCount;
+	}
+
+	/**
+	 * Records the certificate if it is accepted and is the leader of its symmetry class.
+	 * The partition can be changed as soon as this returns.
+	 */
+	public void add(Partition ptn) {
+		int digitCount = ptn.digitCount;
+		if (!accepts(digitCount)) {
+			return;
+		}
+		int[] digits = Arrays.copyOf(ptn.getUnderlyingArray(),digitCount);
+		if (!isLeader(digits,digitCount,colorCount)) {
+			return;
+		}
+		if (minDigitCount==0 && digitCount>_longestDigitCount) {
+			synchronized (this) {
+				_longestDigitCount = Math.max(_longestDigitCount,digitCount);
+			}
+		}
+		byte[] record = new byte[getRecordSize(digitCount,bitsPerDigit)];
+		ByteBuffer.wrap(record).putInt(digitCount);
+		for (int d=0; d<digitCount; d++) {
+			int bit = 32 + d*bitsPerDigit;
+			for (int b=0; b<bitsPerDigit; b++, bit++) {
+				record[bit>>>3] |= ((digits[d] >>> b) & 1) << (bit & 7);
+			}
+		}
+		try {
+			_queue.put(record);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns true if the digits have colors first appearing in descending order and are no greater than their normalized reverse
+	 */
+	static public boolean isLeader(int[] digits,int digitCount,int colorCount) {
+		int[] normalizedDigits = digits.clone();
+		ArrayUtil.normalizeColors(normalizedDigits,digitCount,colorCount);
+		if (ArrayUtil.compare(normalizedDigits,digits,digitCount)!=0) {
+			return false;
+		}
+		ArrayUtil.reverse(digits,normalizedDigits,digitCount);
+		ArrayUtil.normalizeColors(normalizedDigits,digitCount,colorCount);
+		return ArrayUtil.compare(digits,normalizedDigits,digitCount)<=0;
+	}
+
+	/**
+	 * Returns the number of bytes holding a certificate, ie its digit count and its packed digits
+	 */
+	static public int getRecordSize(int digitCount,int bitsPerDigit) {
+		return 4 + (digitCount*bitsPerDigit+7) / 8;
+	}
+
+	/**
+	 * Returns the number of certificates written to the file so far, those still queued are not included
+	 */
+	public synchronized long getCertificateCount() {
+		return _certificateCount;
+	}
+
+	/**
+	 * Writes every queued certificate and closes the file
+	 * @throws IOException if the writer thread failed to write any certificate
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			_queue.put(END);
+			_thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_channel.close();
+		if (_failure!=null) {
+			throw _failure;
+		}
+	}
+
+	/**
+	 * The writer thread, on failure it keeps taking certificates so that workers never wait on it
+	 */
+	protected void run() {
+		while (true) {
+			byte[] record;
+			try {
+				record = _queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (record==END) {
+				break;
+			}
+			if (_failure!=null) {
+				continue;
+			}
+			try {
+				write(record);
+			} catch (IOException e) {
+				_failure = e;
+			}
+		}
+		try {
+			if (_failure==null) {
+				writeBlock();
+				_channel.force(false);
+			}
+		} catch (IOException e) {
+			_failure = e;
+		}
+	}
+
+	/**
+	 * Appends a certificate to the current block, in longest mode shorter certificates are dropped and a longer one
+	 * replaces every certificate written so far
+	 */
+	protected void write(byte[] record) throws IOException {
+		if (minDigitCount==0) {
+			int digitCount = ByteBuffer.wrap(record).getInt();
+			if (digitCount<_fileDigitCount) {
+				return;
+			}
+			if (digitCount>_fileDigitCount) {
+				_fileDigitCount = digitCount;
+				_block.clear();
+				_blockCertificateCount = 0;
+				_channel.truncate(HEADER_SIZE);
+				_channel.position(HEADER_SIZE);
+				synchronized (this) {
+					_certificateCount = 0;
+				}
+			}
+		}
+		if (record.length>_block.remaining()) {
+			writeBlock();
+			if (record.length>_block.capacity()) {
+				_block = ByteBuffer.allocate(record.length);
+			}
+		}
+		_block.put(record);
+		_blockCertificateCount++;
+	}
+
+	/**
+	 * Deflates the current block and appends it to the file
+	 */
+	protected void writeBlock() throws IOException {
+		if (_blockCertificateCount==0) {
+			return;
+		}
+		int rawLength = _block.position();
+		_deflater.reset();
+		_deflater.setInput(_block.array(),0,rawLength);
+		_deflater.finish();
+		int compressedLength = 0;
+		while (!_deflater.finished()) {
+			if (compressedLength==_compressed.length) {
+				_compressed = Arrays.copyOf(_compressed,2*_compressed.length);
+			}
+			compressedLength += _deflater.deflate(_compressed,compressedLength,_compressed.length-compressedLength);
+		}
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		header.putInt(rawLength);
+		header.putInt(compressedLength);
+		header.putInt(_blockCertificateCount);
+		writeFully(header.flip());
+		writeFully(ByteBuffer.wrap(_compressed,0,compressedLength));
+		synchronized (this) {
+			_certificateCount += _blockCertificateCount;
+		}
+		_block.clear();
+		_blockCertificateCount = 0;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			_channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,396 @@
+package org.dbaussie.vdw.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Remembers which prefixes have had their whole subtree searched, across runs and across the instances of a sweep.
+ * 
+ * For every exhausted prefix of W(colorCount,sequenceLength) the cache holds the longest certificate found below it
+ * (or none if the prefix could not be extended), which is all a search needs to skip that subtree the next time it
+ * meets the prefix or any extension of it. Prefixes are stored in canonical form, their colors relabelled in order of
+ * first appearance as ArrayUtil.normalizeColors does, so a prefix and all of its color permutations share one entry.
+ * The certificate is stored with the same relabelling and mapped back to the colors of the prefix it is found for.
+ * Searches with normalization switched on only meet canonical prefixes, without it the cache is up to colorCount!
+ * times smaller than storing every prefix. Once a prefix is exhausted its extensions are redundant, those are dropped when
+ * the file is compacted, which happens whenever it is opened.
+ * 
+ * The file holds a header followed by records appended as subtrees finish, each with its own length and CRC so a record
+ * cut short by a crash is dropped (along with anything after it) by the next compaction. Every record packs its digits
+ * with just enough bits for its color count. Lookups only read a concurrent map so any number of workers can share
+ * one cache, additions are appended under a lock. A lock file keeps the cache from being opened twice at once.
+ * 
+ * @author dbaussie
+ *
+ */
+public class PrefixCache implements Closeable {
+
+	// constants
+	final static public int MAGIC = 0x56445750; // "VDWP"
+	final static public int VERSION = 1;
+	final static public int HEADER_SIZE = 8;
+	final static public int RECORD_HEADER_SIZE = 24; // length, colorCount, sequenceLength, prefixLength, maxDigitCount, certificateDigitCount
+	final static public int RECORD_TRAILER_SIZE = 4; // the CRC of the record
+
+	// properties
+	final public String path;
+
+	// attributes
+	protected ConcurrentHashMap<String,Entry> _entries = new ConcurrentHashMap<String,Entry>(); // keyed by getKey
+	protected FileChannel _channel; // written under this
+	protected FileChannel _lockChannel;
+	protected FileLock _lock;
+	protected int _droppedCount; // the number of records dropped by the last compaction
+
+	/**
+	 * Opens the cache, creating it if it does not exist and compacting it otherwise
+	 * @throws IOException if the file is not a prefix cache or is in use by another process
+	 */
+	public PrefixCache(String path) throws IOException {
+		this.path = path;
+		_lockChannel = FileChannel.open(Paths.get(path+".lock"),StandardOpenOption.CREATE,StandardOpenOption.WRITE);
+		try {
+			_lock = _lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// already open in this process
+			_lock = null;
+		}
+		if (_lock==null) {
+			_lockChannel.close();
+			throw new IOException(path+" is in use by another process");
+		}
+		try {
+			List<Entry> entryList = read();
+			for (Entry entry : entryList) {
+				_entries.merge(entry.getKey(),entry,(oldEntry,newEntry) -> oldEntry);
+			}
+			compact(entryList.size());
+		} catch (IOException e) {
+			_lockChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the entry for the shortest exhausted prefix of the first prefixLength digits of the partition, or of any
+	 * of its color permutations, in the colors of the partition. Returns null if its subtree has not been searched.
+	 */
+	public Entry find(Partition ptn,int prefixLength,int sequenceLength) {
+		int colorCount = ptn.getColorCount();
+		int[] labels = getCanonicalLabels(ptn,prefixLength);
+		char[] key = new char[2+prefixLength];
+		key[0] = (char)colorCount;
+		key[1] = (char)sequenceLength;
+		for (int d=0; d<prefixLength; d++) {
+			key[2+d] = (char)labels[ptn.getDigit(d)];
+			Entry entry = _entries.get(new String(key,0,3+d));
+			if (entry!=null) {
+				return entry.relabel(labels);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records that the subtree below the first prefixLength digits of the partition has been searched, the longest
+	 * certificate below it having maxDigitCount digits (or 0 and a null certificate if there is none)
+	 */
+	public synchronized void add(Partition ptn,int prefixLength,int sequenceLength,int maxDigitCount,Partition certificate) throws IOException {
+		if (find(ptn,prefixLength,sequenceLength)!=null) {
+			return;
+		}
+		int[] labels = getCanonicalLabels(ptn,prefixLength);
+		byte[] prefix = getDigits(ptn,prefixLength,labels);
+		byte[] certificateDigits = certificate!=null ? getDigits(certificate,certificate.digitCount,labels) : new byte[0];
+		Entry entry = new Entry(ptn.getColorCount(),sequenceLength,prefix,maxDigitCount,certificateDigits);
+		ByteBuffer record = entry.toRecord();
+		while (record.hasRemaining()) {
+			_channel.write(record);
+		}
+		_entries.put(entry.getKey(),entry);
+	}
+
+	/**
+	 * Returns the number of exhausted prefixes in the cache, including those made redundant since it was opened
+	 */
+	public int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Returns the number of records dropped when the cache was opened as redundant, duplicated or damaged
+	 */
+	public int getDroppedCount() {
+		return _droppedCount;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			_channel.force(false);
+			_channel.close();
+		} finally {
+			_lockChannel.close();
+		}
+	}
+
+	/**
+	 * Reads every intact record, stopping at the first damaged one
+	 */
+	protected List<Entry> read() throws IOException {
+		List<Entry> entryList = new ArrayList<Entry>();
+		Path file = Paths.get(path);
+		if (!Files.exists(file)) {
+			return entryList;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.remaining()<HEADER_SIZE || buffer.getInt()!=MAGIC || buffer.getInt()!=VERSION) {
+			throw new IOException(path+" is not a prefix cache");
+		}
+		while (buffer.remaining()>=RECORD_HEADER_SIZE) {
+			int length = buffer.getInt(buffer.position());
+			if (length<RECORD_HEADER_SIZE+RECORD_TRAILER_SIZE || length>buffer.remaining()) {
+				break;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(),buffer.position(),length-RECORD_TRAILER_SIZE);
+			if ((int)crc.getValue()!=buffer.getInt(buffer.position()+length-RECORD_TRAILER_SIZE)) {
+				break;
+			}
+			entryList.add(Entry.fromRecord(buffer));
+		}
+		return entryList;
+	}
+
+	/**
+	 * Drops the prefixes whose subtrees lie inside another exhausted subtree and, if anything was dropped, rewrites the
+	 * file to a temporary file that then replaces it. Leaves the file open for appending.
+	 */
+	protected void compact(int recordCount) throws IOException {
+		_entries.values().removeIf(entry -> {
+			for (int length=1; length<entry.prefix.length; length++) {
+				if (_entries.containsKey(entry.getKey().substring(0,2+length))) {
+					return true;
+				}
+			}
+			return false;
+		});
+		_droppedCount = recordCount - _entries.size();
+		Path file = Paths.get(path);
+		if (_droppedCount>0 || !Files.exists(file) || Files.size(file)!=getFileSize()) {
+			Path tempFile = Paths.get(path+".tmp");
+			try (FileChannel channel = FileChannel.open(tempFile,StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				writeFully(channel,header.flip());
+				for (Entry entry : _entries.values()) {
+					writeFully(channel,entry.toRecord());
+				}
+				channel.force(false);
+			}
+			Files.move(tempFile,file,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}
+		_channel = FileChannel.open(file,StandardOpenOption.WRITE,StandardOpenOption.APPEND);
+	}
+
+	protected long getFileSize() {
+		long size = HEADER_SIZE;
+		for (Entry entry : _entries.values()) {
+			size += entry.getRecordSize();
+		}
+		return size;
+	}
+
+	static protected void writeFully(FileChannel channel,ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Returns the digits of the partition relabelled with the given labels
+	 */
+	static protected byte[] getDigits(Partition ptn,int digitCount,int[] labels) {
+		byte[] digits = new byte[digitCount];
+		for (int d=0; d<digitCount; d++) {
+			digits[d] = (byte)labels[ptn.getDigit(d)];
+		}
+		return digits;
+	}
+
+	/**
+	 * Returns the label of each color in the canonical form of the first prefixLength digits of the partition, the colors
+	 * being labelled colorCount-1, colorCount-2, ... as they first appear and any missing colors taking the labels left
+	 */
+	static protected int[] getCanonicalLabels(Partition ptn,int prefixLength) {
+		int colorCount = ptn.getColorCount();
+		int[] labels = new int[colorCount];
+		Arrays.fill(labels,-1);
+		int nextLabel = colorCount-1;
+		for (int d=0; d<prefixLength && nextLabel>=0; d++) {
+			int color = ptn.getDigit(d);
+			if (labels[color]==-1) {
+				labels[color] = nextLabel;
+				nextLabel--;
+			}
+		}
+		for (int color=0; color<colorCount; color++) {
+			if (labels[color]==-1) {
+				labels[color] = nextLabel;
+				nextLabel--;
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * An exhausted prefix and the longest certificate found below it
+	 */
+	static public class Entry {
+
+		// properties
+		final public int colorCount;
+		final public int sequenceLength;
+		final public byte[] prefix;
+		final public int maxDigitCount; // the number of digits of the longest certificate below the prefix, 0 if there is none
+		final public byte[] certificate; // the digits of that certificate, empty if there is none
+
+		public Entry(int colorCount,int sequenceLength,byte[] prefix,int maxDigitCount,byte[] certificate) {
+			this.colorCount = colorCount;
+			this.sequenceLength = sequenceLength;
+			this.prefix = prefix;
+			this.maxDigitCount = maxDigitCount;
+			this.certificate = certificate;
+		}
+
+		/**
+		 * Returns the key of the entry, the color count, sequence length and digits of the prefix as chars
+		 */
+		public String getKey() {
+			char[] key = new char[2+prefix.length];
+			key[0] = (char)colorCount;
+			key[1] = (char)sequenceLength;
+			for (int d=0; d<prefix.length; d++) {
+				key[2+d] = (char)prefix[d];
+			}
+			return new String(key);
+		}
+
+		/**
+		 * Returns the entry in the colors that the given labels map to the entry's colors, the entry itself if each color
+		 * is its own label
+		 */
+		protected Entry relabel(int[] labels) {
+			int[] colors = new int[labels.length];
+			boolean identity = true;
+			for (int color=0; color<labels.length; color++) {
+				colors[labels[color]] = color;
+				identity &= labels[color]==color;
+			}
+			if (identity) {
+				return this;
+			}
+			byte[] relabelledPrefix = new byte[prefix.length];
+			for (int d=0; d<prefix.length; d++) {
+				relabelledPrefix[d] = (byte)colors[prefix[d]];
+			}
+			byte[] relabelledCertificate = new byte[certificate.length];
+			for (int d=0; d<certificate.length; d++) {
+				relabelledCertificate[d] = (byte)colors[certificate[d]];
+			}
+			return new Entry(colorCount,sequenceLength,relabelledPrefix,maxDigitCount,relabelledCertificate);
+		}
+
+		/**
+		 * Copies the certificate into the given partition setting its digit count
+		 */
+		public void restoreCertificate(Partition ptn) {
+			ptn.setDigitCount(certificate.length);
+			for (int d=0; d<certificate.length; d++) {
+				ptn.setDigitAt(d,certificate[d]);
+			}
+		}
+
+		public int getBitsPerDigit() {
+			return Math.max(1,32-Integer.numberOfLeadingZeros(colorCount-1));
+		}
+
+		public int getRecordSize() {
+			return RECORD_HEADER_SIZE + ((prefix.length+certificate.length)*getBitsPerDigit()+7) / 8 + RECORD_TRAILER_SIZE;
+		}
+
+		/**
+		 * Returns the record holding the entry, with the digits of the prefix and certificate packed together
+		 */
+		protected ByteBuffer toRecord() {
+			int length = getRecordSize();
+			byte[] record = new byte[length];
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			buffer.putInt(length);
+			buffer.putInt(colorCount);
+			buffer.putInt(sequenceLength);
+			buffer.putInt(prefix.length);
+			buffer.putInt(maxDigitCount);
+			buffer.putInt(certificate.length);
+			int bitsPerDigit = getBitsPerDigit();
+			int bit = RECORD_HEADER_SIZE*8;
+			for (int d=0; d<prefix.length+certificate.length; d++) {
+				int digit = d<prefix.length ? prefix[d] : certificate[d-prefix.length];
+				for (int b=0; b<bitsPerDigit; b++, bit++) {
+					record[bit>>>3] |= ((digit >>> b) & 1) << (bit & 7);
+				}
+			}
+			CRC32 crc = new CRC32();
+			crc.update(record,0,length-RECORD_TRAILER_SIZE);
+			buffer.putInt(length-RECORD_TRAILER_SIZE,(int)crc.getValue());
+			return buffer.rewind();
+		}
+
+		/**
+		 * Reads the entry from a record whose CRC has been checked, leaving the buffer after the record
+		 */
+		static protected Entry fromRecord(ByteBuffer buffer) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int colorCount = buffer.getInt();
+			int sequenceLength = buffer.getInt();
+			byte[] prefix = new byte[buffer.getInt()];
+			int maxDigitCount = buffer.getInt();
+			byte[] certificate = new byte[buffer.getInt()];
+			Entry entry = new Entry(colorCount,sequenceLength,prefix,maxDigitCount,certificate);
+			int bitsPerDigit = entry.getBitsPerDigit();
+			int bit = (start+RECORD_HEADER_SIZE)*8;
+			byte[] record = buffer.array();
+			for (int d=0; d<prefix.length+certificate.length; d++) {
+				int digit = 0;
+				for (int b=0; b<bitsPerDigit; b++, bit++) {
+					digit |= ((record[bit>>>3] >>> (bit & 7)) & 1) << b;
+				}
+				if (d<prefix.length) {
+					prefix[d] = (byte)digit;
+				} else {
+					certificate[d-prefix.length] = (byte)digit;
+				}
+			}
+			buffer.position(start+length);
+			return entry;
+		}
+	}
+}
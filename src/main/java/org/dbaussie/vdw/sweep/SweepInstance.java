@@ -0,0 +1,72 @@
+package org.dbaussie.vdw.sweep;
+
+/**
+ * One W(colorCount,sequenceLength) instance of a sweep together with its outcome once it has been searched.
+ * 
+ * An instance is given on one line as "colorCount sequenceLength [initialDigitCount [timeLimit]]", a time limit of 0
+ * meaning the sweep's. If the time limit runs out the instance is only bounded below, by one more than bestDigitCount.
+ * 
+ * @author dbaussie
+ *
+ */
+public class SweepInstance {
+
+	// constants
+	final static public String PENDING = "pending";
+	final static public String DONE = "done";
+	final static public String TIMED_OUT = "timeout";
+	final static public String FAILED = "failed";
+	final static public String HEADER = "instance\tinitial\tstatus\tresult\tlongest\testimated\tvisited\tduration";
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+	final public int initialDigitCount; // -1 for the generator's default
+	public int timeLimit; // in seconds, 0 to use the sweep's time limit
+	public double estimatedCount; // the estimated number of certificates to search or 0 if not estimated
+	public String status = PENDING;
+	public int result = -1; // W(colorCount,sequenceLength) once done, otherwise -1
+	public int bestDigitCount; // the number of digits of the longest certificate found
+	public long visitedCount; // the number of certificates visited
+	public long duration; // in ms
+	public String error; // the reason the search failed if it did
+
+	public SweepInstance(int colorCount,int sequenceLength,int initialDigitCount) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		this.initialDigitCount = initialDigitCount;
+	}
+
+	public SweepInstance(int colorCount,int sequenceLength) {
+		this(colorCount,sequenceLength,-1);
+	}
+
+	/**
+	 * Parses an instance from a line of whitespace separated numbers
+	 */
+	static public SweepInstance parse(String line) {
+		String[] fields = line.trim().split("\\s+");
+		if (fields.length<2) {
+			throw new IllegalArgumentException("Expected colorCount sequenceLength [initialDigitCount [timeLimit]]: "+line);
+		}
+		int initialDigitCount = fields.length>2 ? Integer.parseInt(fields[2]) : -1;
+		SweepInstance instance = new SweepInstance(Integer.parseInt(fields[0]),Integer.parseInt(fields[1]),initialDigitCount);
+		if (fields.length>3) {
+			instance.timeLimit = Integer.parseInt(fields[3]);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the row of the results table for this instance, see HEADER
+	 */
+	public String toRow() {
+		String row = toString()+"\t"+initialDigitCount+"\t"+status+"\t"+result+"\t"+bestDigitCount+"\t"+Math.round(estimatedCount)+"\t"+visitedCount+"\t"+duration;
+		return error!=null ? row+"\t"+error : row;
+	}
+
+	@Override
+	public String toString() {
+		return "W("+colorCount+","+sequenceLength+")";
+	}
+}
@@ -0,0 +1,214 @@
+package org.dbaussie.vdw.sweep;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import org.dbaussie.vdw.AbstractVdwGenerator;
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.logging.Log;
+import org.dbaussie.vdw.store.PrefixCache;
+
+/**
+ * Searches a grid of W(k,t) instances on one machine without oversubscribing its cores.
+ * 
+ * Every instance is searched by a ThreadedVdwGenerator, but instead of each creating its own pool they all share one
+ * ForkJoinPool of parallelism threads, which is the only place the searches (and their estimates) run.
+ * Up to concurrency instances are searched at once so the small ones, which cannot keep every thread busy, overlap.
+ * The instances are started in the given order, smallest first (fewest colors, then shortest sequence) or in order of
+ * their estimated search size, which costs estimateProbeCount probes per initial certificate up front. The instances
+ * are then estimated side by side on the shared pool and the estimates stand in for the one each search would make.
+ * Each instance stops when its time limit (or the sweep's) runs out, leaving a lower bound rather than an answer.
+ * 
+ * As each instance finishes its row is appended to the results table at resultPath, see SweepInstance.HEADER.
+ * If prefixCachePath is set every instance shares one PrefixCache, so a repeated sweep skips what was already searched.
+ * 
+ * @author dbaussie
+ *
+ */
+public class SweepRunner {
+
+	// constants
+	final static public String ORDER_INPUT = "input";
+	final static public String ORDER_SMALLEST = "smallest";
+	final static public String ORDER_ESTIMATE = "estimate";
+
+	// properties
+	public int parallelism = Runtime.getRuntime().availableProcessors(); // the number of threads searching, shared by every instance
+	public int concurrency = 2; // the number of instances searched at once
+	public String order = ORDER_ESTIMATE;
+	public int estimateProbeCount = 100; // the number of probes per initial certificate when ordering by estimate
+	public int timeLimit = 0; // the number of seconds each instance may search for unless it has its own limit, 0 for no limit
+	public String resultPath; // if set the results table is written here
+	public String prefixCachePath; // if set exhausted subtrees are recorded to and skipped using this PrefixCache
+
+	// attributes
+	protected ForkJoinPool _pool;
+	protected PrintWriter _resultWriter; // guarded by this
+	protected PrefixCache _prefixCache;
+
+	/**
+	 * Runs the instances listed one per line in a file, see SweepInstance.parse
+	 */
+	static public void main(String[] argv) throws IOException {
+		if (argv.length<1) {
+			System.out.println("Usage: SweepRunner instanceFile [resultFile] [parallelism] [concurrency] [timeLimit]");
+			return;
+		}
+		Log.enabled = true;
+		SweepRunner runner = new SweepRunner();
+		runner.resultPath = argv.length>1 ? argv[1] : null;
+		if (argv.length>2) {
+			runner.parallelism = Integer.parseInt(argv[2]);
+		}
+		if (argv.length>3) {
+			runner.concurrency = Integer.parseInt(argv[3]);
+		}
+		if (argv.length>4) {
+			runner.timeLimit = Integer.parseInt(argv[4]);
+		}
+		List<SweepInstance> instanceList = readInstances(argv[0]);
+		runner.run(instanceList);
+		System.out.println(SweepInstance.HEADER);
+		for (SweepInstance instance : instanceList) {
+			System.out.println(instance.toRow());
+		}
+	}
+
+	/**
+	 * Reads the instances from a file, skipping blank lines and lines starting with '#'
+	 */
+	static public List<SweepInstance> readInstances(String path) throws IOException {
+		List<SweepInstance> instanceList = new ArrayList<SweepInstance>();
+		for (String line : Files.readAllLines(Paths.get(path))) {
+			if (!line.isBlank() && !line.trim().startsWith("#")) {
+				instanceList.add(SweepInstance.parse(line));
+			}
+		}
+		return instanceList;
+	}
+
+	/**
+	 * Searches every instance, recording the outcome in the instance, and returns once they have all finished
+	 */
+	public void run(List<SweepInstance> instanceList) throws IOException {
+		long startTime = new Date().getTime();
+		_pool = new ForkJoinPool(parallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,concurrency),r -> {
+			Thread thread = new Thread(r,"vdw-sweep");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			if (prefixCachePath!=null) {
+				_prefixCache = new PrefixCache(prefixCachePath);
+			}
+			if (resultPath!=null) {
+				_resultWriter = new PrintWriter(new FileWriter(resultPath));
+				_resultWriter.println(SweepInstance.HEADER);
+				_resultWriter.flush();
+			}
+			List<Future<?>> futureList = new ArrayList<Future<?>>();
+			for (SweepInstance instance : sortInstances(instanceList)) {
+				futureList.add(executor.submit(() -> runInstance(instance)));
+			}
+			for (Future<?> future : futureList) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("Sweep interrupted",e);
+		} finally {
+			executor.shutdownNow();
+			_pool.shutdown();
+			if (_resultWriter!=null) {
+				_resultWriter.close();
+				_resultWriter = null;
+			}
+			if (_prefixCache!=null) {
+				_prefixCache.close();
+				_prefixCache = null;
+			}
+		}
+		long duration = new Date().getTime() - startTime;
+		Log.log("Swept "+instanceList.size()+" instances on "+parallelism+" threads in "+AbstractVdwGenerator.formatDuration(duration/1000));
+	}
+
+	/**
+	 * Returns a copy of the instances in the order they should be started
+	 */
+	protected List<SweepInstance> sortInstances(List<SweepInstance> instanceList) {
+		List<SweepInstance> sortedList = new ArrayList<SweepInstance>(instanceList);
+		if (ORDER_SMALLEST.equals(order)) {
+			sortedList.sort(Comparator.<SweepInstance>comparingInt(instance -> instance.colorCount).thenComparingInt(instance -> instance.sequenceLength));
+		} else if (ORDER_ESTIMATE.equals(order)) {
+			List<ForkJoinTask<?>> taskList = new ArrayList<ForkJoinTask<?>>();
+			for (SweepInstance instance : sortedList) {
+				taskList.add(_pool.submit(() -> {
+					ThreadedVdwGenerator generator = createGenerator(instance);
+					generator.estimateProbeCount = estimateProbeCount;
+					instance.estimatedCount = generator.estimate();
+				}));
+			}
+			taskList.forEach(ForkJoinTask::join);
+			sortedList.sort(Comparator.comparingDouble(instance -> instance.estimatedCount));
+		}
+		return sortedList;
+	}
+
+	/**
+	 * Searches one instance on the shared pool
+	 */
+	protected void runInstance(SweepInstance instance) {
+		ThreadedVdwGenerator generator = createGenerator(instance);
+		generator.timeLimit = instance.timeLimit>0 ? instance.timeLimit : timeLimit;
+		if (instance.estimatedCount>0) {
+			// already estimated when the sweep was ordered, so the search does not estimate it again
+			generator.estimateProbeCount = 0;
+		}
+		long startTime = new Date().getTime();
+		try {
+			generator.generate();
+			instance.status = generator.isTimedOut() ? SweepInstance.TIMED_OUT : SweepInstance.DONE;
+			instance.result = generator.getResult();
+			instance.bestDigitCount = generator.getBestDigitCount();
+			instance.visitedCount = generator.getVisitedCount();
+		} catch (RuntimeException e) {
+			instance.status = SweepInstance.FAILED;
+			instance.error = e.toString();
+		}
+		instance.duration = new Date().getTime() - startTime;
+		writeResult(instance);
+	}
+
+	/**
+	 * Creates the generator for an instance, the results table takes the place of the progress reports
+	 */
+	protected ThreadedVdwGenerator createGenerator(SweepInstance instance) {
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(instance.colorCount,instance.sequenceLength,instance.initialDigitCount);
+		generator.pool = _pool;
+		generator.prefixCache = _prefixCache;
+		generator.parallelism = parallelism;
+		generator.registerMetrics = false;
+		generator.reportInterval = 0;
+		return generator;
+	}
+
+	protected synchronized void writeResult(SweepInstance instance) {
+		if (_resultWriter!=null) {
+			_resultWriter.println(instance.toRow());
+			_resultWriter.flush();
+		}
+	}
+}
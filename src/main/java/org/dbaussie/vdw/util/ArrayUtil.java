@@ -1,5 +1,7 @@
 package org.dbaussie.vdw.util;
 
+import java.util.Arrays;
+
 /**
  * General purpose Array manipulation utilities
  * @author dbaussie
@@ -54,6 +56,44 @@ public class ArrayUtil {
 		}
 	}
 
+	/**
+	 * Copies count entries from the src to dest arrays in reverse order
+	 * The dest array must be large enough to accommodate the digits and may be the same array as the src.
+	 * 
+	 * @param src - the source array
+	 * @param dest - the destination array
+	 * @param count - the number of entries to reverse
+	 */
+	static public void reverse(int[] src,int[] dest,int count) {
+		for (int i=0, j=count-1; i<=j; i++, j--) {
+			int value = src[i];
+			dest[i] = src[j];
+			dest[j] = value;
+		}
+	}
+
+	/**
+	 * Relabels the colors of an array so that they first appear in descending order starting with colorCount-1
+	 * This gives the same result for every array that only differs by a permutation of the colors.
+	 * 
+	 * @param data - the array is assumed to hold values from 0 to colorCount-1
+	 * @param count - the number of values to relabel
+	 * @param colorCount - the number of colors
+	 */
+	static public void normalizeColors(int[] data,int count,int colorCount) {
+		int[] labels = new int[colorCount];
+		Arrays.fill(labels,-1);
+		int nextLabel = colorCount-1;
+		for (int i=0; i<count; i++) {
+			int color = data[i];
+			if (labels[color]==-1) {
+				labels[color] = nextLabel;
+				nextLabel--;
+			}
+			data[i] = labels[color];
+		}
+	}
+
 	/**
 	 * Compares two integer arrays
 	 * Returns   0 if the arrays are equal
@@ -76,6 +116,20 @@ public class ArrayUtil {
 		return 0;
 	}
 	
+	/**
+	 * Returns the 64 bits of a bitset starting at the given bit index, bit 0 of the result being bit start of the bitset.
+	 * The bitset must contain the word following the one holding bit start.
+	 * 
+	 * @param bits - the bitset, bit i is held in bit i%64 of bits[i/64]
+	 * @param start - the index of the first bit to return
+	 */
+	static public long getBitWindow(long[] bits,int start) {
+		int word = start >>> 6;
+		int offset = start & 63;
+		// the double shift avoids a branch as it correctly shifts out all the bits of the next word when offset is 0
+		return (bits[word] >>> offset) | ((bits[word+1] << 1) << (63-offset));
+	}
+
 	static public String toString(int[] data,int digitCount) {
 		String result = "";
 		for (int i=0; i<digitCount; i++) {
@@ -0,0 +1,268 @@
+package org.dbaussie.vdw.validate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.CertificateReader;
+import org.dbaussie.vdw.store.CertificateWriter;
+
+/**
+ * Validates files of colorings, eg candidate lower bounds produced elsewhere, in parallel.
+ * 
+ * A text file holds one coloring per line as digit characters (as in Partition.toString), blank lines and lines starting
+ * with '#' are skipped. It is memory mapped a window at a time, each window is cut at line ends into slices and the
+ * slices are validated in parallel, each worker with its own ColoringValidator so no coloring is copied or allocated.
+ * A file written by CertificateWriter is streamed through a CertificateReader instead and validated a batch at a time.
+ * 
+ * Every invalid coloring is reported with its line (or record) number and its first monochromatic AP.
+ * 
+ * @author dbaussie
+ *
+ */
+public class BatchValidator {
+
+	// constants
+	final static public int SLICE_SIZE = 1 << 20; // the number of bytes of text validated by one task
+	final static public int MAX_WINDOW_SIZE = 1 << 30; // the largest part of the file mapped at once
+	final static public int BATCH_SIZE = 1 << 12; // the number of certificates read from a certificate file per batch
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+	public int parallelism = Runtime.getRuntime().availableProcessors();
+
+	// attributes
+	protected ThreadLocal<ColoringValidator> _validators;
+
+	static public void main(String[] argv) throws IOException {
+		if (argv.length<3) {
+			System.out.println("Usage: BatchValidator colorCount sequenceLength file [parallelism]");
+			return;
+		}
+		BatchValidator validator = new BatchValidator(Integer.parseInt(argv[0]),Integer.parseInt(argv[1]));
+		if (argv.length>3) {
+			validator.parallelism = Integer.parseInt(argv[3]);
+		}
+		Result result = validator.validate(argv[2]);
+		for (Invalid invalid : result.invalidList) {
+			System.out.println(invalid);
+		}
+		System.out.println(result);
+	}
+
+	public BatchValidator(int colorCount,int sequenceLength) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		_validators = ThreadLocal.withInitial(() -> new ColoringValidator(colorCount,sequenceLength));
+	}
+
+	/**
+	 * Validates every coloring in a text or certificate file
+	 */
+	public Result validate(String path) throws IOException {
+		long startTime = new Date().getTime();
+		Result result = new Result();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (FileChannel channel = FileChannel.open(Paths.get(path),StandardOpenOption.READ)) {
+			result.byteCount = channel.size();
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			channel.read(magic,0);
+			if (!magic.hasRemaining() && magic.getInt(0)==CertificateWriter.MAGIC) {
+				validateCertificates(path,pool,result);
+			} else {
+				validateText(channel,pool,result);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException("Unable to validate "+path,e);
+		} finally {
+			pool.shutdown();
+		}
+		result.duration = new Date().getTime() - startTime;
+		return result;
+	}
+
+	protected void validateText(FileChannel channel,ForkJoinPool pool,Result result) throws IOException, InterruptedException, ExecutionException {
+		long size = channel.size();
+		long windowStart = 0;
+		while (windowStart<size) {
+			int windowSize = (int)Math.min(MAX_WINDOW_SIZE,size-windowStart);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,windowStart,windowSize);
+			if (windowStart+windowSize<size) {
+				// end the window after its last complete line
+				windowSize = lastLineEnd(window,0,windowSize);
+				if (windowSize==0) {
+					throw new IOException("Line at byte "+windowStart+" is longer than "+MAX_WINDOW_SIZE+" bytes");
+				}
+			}
+			List<int[]> slices = new ArrayList<int[]>();
+			for (int sliceStart=0; sliceStart<windowSize; ) {
+				int sliceEnd = sliceStart+SLICE_SIZE>=windowSize ? windowSize : lastLineEnd(window,sliceStart,sliceStart+SLICE_SIZE);
+				if (sliceEnd==sliceStart) {
+					// a line longer than a slice gets a slice of its own
+					sliceEnd = nextLineEnd(window,sliceStart+SLICE_SIZE,windowSize);
+				}
+				slices.add(new int[] {sliceStart,sliceEnd});
+				sliceStart = sliceEnd;
+			}
+			List<Result> sliceResults = pool.submit(() -> slices.parallelStream()
+					.map(slice -> validateSlice(window,slice[0],slice[1]))
+					.collect(Collectors.toList())).get();
+			for (Result sliceResult : sliceResults) {
+				result.add(sliceResult);
+			}
+			windowStart += windowSize;
+		}
+	}
+
+	/**
+	 * Validates the lines of a slice of text, the line numbers in the result are relative to the slice
+	 */
+	protected Result validateSlice(ByteBuffer buffer,int start,int end) {
+		ColoringValidator validator = _validators.get();
+		Result result = new Result();
+		int lineStart = start;
+		while (lineStart<end) {
+			int lineEnd = lineStart;
+			while (lineEnd<end && buffer.get(lineEnd)!='\n') {
+				lineEnd++;
+			}
+			int next = lineEnd + 1;
+			if (lineEnd>lineStart && buffer.get(lineEnd-1)=='\r') {
+				lineEnd--;
+			}
+			result.lineCount++;
+			if (lineEnd>lineStart && buffer.get(lineStart)!='#') {
+				result.coloringCount++;
+				try {
+					MonochromaticAP ap = validator.findAP(buffer,lineStart,lineEnd);
+					if (ap!=null) {
+						result.invalidList.add(new Invalid(result.lineCount,ap,null));
+					}
+				} catch (IllegalArgumentException e) {
+					result.invalidList.add(new Invalid(result.lineCount,null,e.getMessage()));
+				}
+			}
+			lineStart = next;
+		}
+		return result;
+	}
+
+	protected void validateCertificates(String path,ForkJoinPool pool,Result result) throws IOException, InterruptedException, ExecutionException {
+		try (CertificateReader reader = new CertificateReader(path)) {
+			while (reader.hasNext()) {
+				List<Partition> batch = new ArrayList<Partition>(BATCH_SIZE);
+				while (batch.size()<BATCH_SIZE && reader.hasNext()) {
+					batch.add(reader.next());
+				}
+				Result batchResult = new Result();
+				List<Invalid> invalidList = pool.submit(() -> IntStream.range(0,batch.size()).parallel()
+						.mapToObj(index -> validateCertificate(batch.get(index),index+1))
+						.filter(invalid -> invalid!=null)
+						.collect(Collectors.toList())).get();
+				batchResult.lineCount = batch.size();
+				batchResult.coloringCount = batch.size();
+				batchResult.invalidList.addAll(invalidList);
+				result.add(batchResult);
+			}
+		}
+	}
+
+	protected Invalid validateCertificate(Partition ptn,long recordNumber) {
+		try {
+			MonochromaticAP ap = _validators.get().findAP(ptn);
+			return ap==null ? null : new Invalid(recordNumber,ap,null);
+		} catch (IllegalArgumentException e) {
+			return new Invalid(recordNumber,null,e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the index after the last line end in buffer[start..end) or start if there is none
+	 */
+	private int lastLineEnd(ByteBuffer buffer,int start,int end) {
+		for (int i=end-1; i>=start; i--) {
+			if (buffer.get(i)=='\n') {
+				return i+1;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index after the first line end in buffer[start..end) or end if there is none
+	 */
+	private int nextLineEnd(ByteBuffer buffer,int start,int end) {
+		for (int i=start; i<end; i++) {
+			if (buffer.get(i)=='\n') {
+				return i+1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * An invalid coloring, either with its first AP or with the reason it could not be read
+	 */
+	static public class Invalid {
+		public long lineNumber; // the line of a text file or the record of a certificate file, counting from 1
+		public MonochromaticAP ap;
+		public String error;
+
+		public Invalid(long lineNumber,MonochromaticAP ap,String error) {
+			this.lineNumber = lineNumber;
+			this.ap = ap;
+			this.error = error;
+		}
+
+		@Override
+		public String toString() {
+			return "line "+lineNumber+": "+(ap!=null ? "AP of "+ap : error);
+		}
+	}
+
+	/**
+	 * The outcome of validating a file, or a part of one
+	 */
+	static public class Result {
+		public long lineCount;
+		public long coloringCount;
+		public List<Invalid> invalidList = new ArrayList<Invalid>(); // in line order
+		public long byteCount;
+		public long duration; // in ms
+
+		/**
+		 * Appends the result of the next part of the file, renumbering its lines to follow ours
+		 */
+		protected void add(Result result) {
+			for (Invalid invalid : result.invalidList) {
+				invalid.lineNumber += lineCount;
+				invalidList.add(invalid);
+			}
+			lineCount += result.lineCount;
+			coloringCount += result.coloringCount;
+		}
+
+		public boolean isValid() {
+			return invalidList.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(duration,1) / 1000.0;
+			return "Validated "+coloringCount+" colorings, "+invalidList.size()+" invalid, in "+duration+"ms ("+
+				String.format("%.1f",byteCount/seconds/(1<<20))+" MB/s)";
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.dbaussie.vdw.validate;
+
+import java.nio.ByteBuffer;
+
+import org.dbaussie.vdw.check.APChecker;
+import org.dbaussie.vdw.check.BinaryAPChecker;
+import org.dbaussie.vdw.check.BitSlicedAPChecker;
+import org.dbaussie.vdw.check.ScalarAPChecker;
+import org.dbaussie.vdw.model.BytePartition;
+import org.dbaussie.vdw.model.Partition;
+
+/**
+ * Checks single colorings for monochromatic APs without needing a generator.
+ * 
+ * Each coloring is copied into a partition owned by the validator, using the storage of the fastest checker for the
+ * number of colors, so a validator must only be used by one thread at a time. Nothing is allocated per coloring
+ * unless it turns out to contain an AP.
+ * 
+ * @author dbaussie
+ *
+ */
+public class ColoringValidator {
+
+	// properties
+	final public int colorCount;
+	final public int sequenceLength;
+
+	// attributes
+	protected APChecker _checker;
+	protected Partition _ptn;
+
+	public ColoringValidator(int colorCount,int sequenceLength) {
+		this.colorCount = colorCount;
+		this.sequenceLength = sequenceLength;
+		_checker = createFastestChecker(colorCount,sequenceLength);
+		_ptn = _checker.createPartition(0);
+	}
+
+	/**
+	 * Returns the checker with the fastest any digit check for the number of colors
+	 */
+	static public APChecker createFastestChecker(int colorCount,int sequenceLength) {
+		if (colorCount==2) {
+			return new BinaryAPChecker(sequenceLength);
+		}
+		if (colorCount<=BytePartition.MAX_COLOR_COUNT) {
+			return new BitSlicedAPChecker(colorCount,sequenceLength);
+		}
+		return new ScalarAPChecker(colorCount,sequenceLength);
+	}
+
+	/**
+	 * Returns the first monochromatic AP of a coloring (the one with the smallest difference and then the smallest start)
+	 * or null if there is none
+	 * @throws IllegalArgumentException if the coloring uses a color out of range
+	 */
+	public MonochromaticAP findAP(Partition ptn) {
+		_ptn.setDigitCount(ptn.digitCount);
+		for (int d=0; d<ptn.digitCount; d++) {
+			_ptn.setDigitAt(d,checkColor(ptn.getDigit(d),d));
+		}
+		return findAP();
+	}
+
+	/**
+	 * Returns the first monochromatic AP of a coloring held as digit characters (as in Partition.toString) from start
+	 * up to but excluding end, or null if there is none
+	 * @throws IllegalArgumentException if there is a character that is not a digit or a color out of range
+	 */
+	public MonochromaticAP findAP(ByteBuffer buffer,int start,int end) {
+		int digitCount = end - start;
+		_ptn.setDigitCount(digitCount);
+		for (int d=0; d<digitCount; d++) {
+			int ch = buffer.get(start+d);
+			int value = ch>='0' && ch<='9' ? ch-'0' : ch>='A' && ch<='Z' ? ch-'A'+10 : -1;
+			_ptn.setDigitAt(d,checkColor(value,d));
+		}
+		return findAP();
+	}
+
+	private int checkColor(int value,int position) {
+		if (value<0 || value>=colorCount) {
+			throw new IllegalArgumentException("Invalid digit at position "+position+" for "+colorCount+" colors");
+		}
+		return value;
+	}
+
+	/**
+	 * The checker only reports where the first AP ends, as it tries the differences in increasing order the smallest
+	 * difference of an AP ending there is the one it found
+	 */
+	protected MonochromaticAP findAP() {
+		int digitCount = _ptn.digitCount;
+		int maxd = Math.max(digitCount-1,0) / (sequenceLength-1);
+		int end = _checker.checkAnyDigit(_ptn,maxd,digitCount);
+		if (end<0) {
+			return null;
+		}
+		int color = _ptn.getDigit(end);
+		for (int d=1; d<=maxd && end-(sequenceLength-1)*d>=0; d++) {
+			int start = end - (sequenceLength-1)*d;
+			int n = 1;
+			while (n<sequenceLength && _ptn.getDigit(end-n*d)==color) {
+				n++;
+			}
+			if (n==sequenceLength) {
+				return new MonochromaticAP(color,start,d,sequenceLength);
+			}
+		}
+		throw new IllegalStateException("No AP ends at position "+end+" of "+_ptn);
+	}
+}
@@ -0,0 +1,39 @@
+package org.dbaussie.vdw.validate;
+
+/**
+ * A monochromatic arithmetic progression found in a coloring, positions count from 0
+ * 
+ * @author dbaussie
+ *
+ */
+public class MonochromaticAP {
+
+	// properties
+	final public int color;
+	final public int start; // the position of the first term
+	final public int difference;
+	final public int length; // the number of terms
+
+	public MonochromaticAP(int color,int start,int difference,int length) {
+		this.color = color;
+		this.start = start;
+		this.difference = difference;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the position of the last term
+	 */
+	public int getEnd() {
+		return start + (length-1)*difference;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("color "+color+" at ");
+		for (int n=0; n<length; n++) {
+			result.append(n==0 ? "" : ",").append(start+n*difference);
+		}
+		return result.toString();
+	}
+}
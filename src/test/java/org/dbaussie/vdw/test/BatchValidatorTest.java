@@ -0,0 +1,93 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.CertificateWriter;
+import org.dbaussie.vdw.validate.BatchValidator;
+import org.dbaussie.vdw.validate.ColoringValidator;
+import org.dbaussie.vdw.validate.MonochromaticAP;
+import org.junit.Test;
+
+public class BatchValidatorTest {
+
+	private String createPath(String suffix) throws IOException {
+		File file = File.createTempFile("vdw",suffix);
+		file.deleteOnExit();
+		return file.getPath();
+	}
+
+	@Test
+	public void testFirstAP() {
+		ColoringValidator validator = new ColoringValidator(3,3);
+		Partition ptn = new Partition(3,0);
+		ptn.setValue("2101202");
+		assertNull(validator.findAP(ptn));
+		// every color has an AP with difference 3, the 2s start first
+		ptn.setValue("210210210");
+		MonochromaticAP ap = validator.findAP(ptn);
+		assertEquals(2,ap.color);
+		assertEquals(0,ap.start);
+		assertEquals(3,ap.difference);
+		assertEquals(6,ap.getEnd());
+		// 2 at 0,1,2 has the smaller difference even though 0 at 3,5,7 comes first in the code
+		ptn.setValue("2220101010");
+		ap = validator.findAP(ptn);
+		assertEquals("color 2 at 0,1,2",ap.toString());
+	}
+
+	@Test
+	public void testTextFile() throws IOException {
+		// every certificate below W(3,3) is valid, appending a digit to the longest makes it invalid
+		VdwGenerator generator = new VdwGenerator(3,3,-1);
+		List<String> lines = new ArrayList<String>();
+		lines.add("# candidates for W(3,3)");
+		for (int digitCount=3; digitCount<27; digitCount++) {
+			lines.add(generator.decide(digitCount).certificate.toString());
+		}
+		String longest = lines.get(lines.size()-1);
+		lines.add("");
+		for (int color=0; color<3; color++) {
+			lines.add(longest+color);
+		}
+		lines.add("0123");
+		String path = createPath(".txt");
+		Files.write(new File(path).toPath(),lines);
+		BatchValidator validator = new BatchValidator(3,3);
+		BatchValidator.Result result = validator.validate(path);
+		assertEquals(lines.size(),result.lineCount);
+		assertEquals(lines.size()-2,result.coloringCount);
+		assertEquals(4,result.invalidList.size());
+		for (int i=0; i<3; i++) {
+			BatchValidator.Invalid invalid = result.invalidList.get(i);
+			assertEquals(lines.size()-3+i,invalid.lineNumber);
+			assertEquals(i,invalid.ap.color);
+			assertEquals(26,invalid.ap.getEnd());
+		}
+		assertNotNull(result.invalidList.get(3).error);
+	}
+
+	@Test
+	public void testCertificateFile() throws IOException {
+		String path = createPath(".cert");
+		try (CertificateWriter writer = new CertificateWriter(path,2,3,1)) {
+			Partition ptn = new Partition(2,0);
+			for (String value : new String[] {"10011001","1001","10101"}) {
+				ptn.setValue(value);
+				writer.add(ptn);
+			}
+		}
+		BatchValidator.Result result = new BatchValidator(2,3).validate(path);
+		assertEquals(3,result.coloringCount);
+		assertEquals(1,result.invalidList.size());
+		assertEquals(3,result.invalidList.get(0).lineNumber);
+		assertEquals("color 1 at 0,2,4",result.invalidList.get(0).ap.toString());
+	}
+}
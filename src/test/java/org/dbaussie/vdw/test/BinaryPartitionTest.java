@@ -0,0 +1,62 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.dbaussie.vdw.check.BinaryAPChecker;
+import org.dbaussie.vdw.check.ScalarAPChecker;
+import org.dbaussie.vdw.model.BinaryPartition;
+import org.dbaussie.vdw.model.Partition;
+import org.junit.Test;
+
+public class BinaryPartitionTest {
+
+	@Test
+	public void testValues() {
+		BinaryPartition ptn = new BinaryPartition(8,4);
+		String testValue = "11101011";
+		ptn.setValue(testValue);
+		assertEquals("Value set correctly",testValue,ptn.toString());
+		assertEquals("Clone value correct",testValue,ptn.clone().toString());
+		int bit = ptn.getStrideBit(7,3);
+		assertEquals("Strided digit correct",1,ptn.getWords()[bit>>>6] >>> bit & 1);
+		assertEquals("Strides adjacent",bit-1,ptn.getStrideBit(4,3));
+	}
+
+	@Test
+	public void testIncrement() {
+		BinaryPartition ptn = new BinaryPartition(8,4);
+		ptn.setValue("11101011");
+		boolean proceed = ptn.increment();
+		assertEquals("proceed is true",proceed,true);
+		assertEquals("increment succeeded","11101100",ptn.toString());
+		ptn.setValue("1111");
+		assertEquals("increment wraps",false,ptn.increment());
+		assertEquals("wrapped to zero","0000",ptn.toString());
+	}
+
+	@Test
+	public void testCheckersAgree() {
+		Random random = new Random(1);
+		for (int sequenceLength=3; sequenceLength<=6; sequenceLength++) {
+			ScalarAPChecker scalar = new ScalarAPChecker(2,sequenceLength);
+			BinaryAPChecker binary = new BinaryAPChecker(sequenceLength);
+			for (int i=0; i<2000; i++) {
+				int digitCount = sequenceLength + random.nextInt(400);
+				Partition ptn = new Partition(2,digitCount);
+				Partition bptn = binary.createPartition(digitCount);
+				for (int d=0; d<digitCount; d++) {
+					// bias the digits to get a reasonable number of AP free partitions
+					int value = random.nextInt(8)<(d%2==0 ? 5 : 3) ? 1 : 0;
+					ptn.setDigitAt(d,value);
+					bptn.setDigitAt(d,value);
+				}
+				int maxd = (digitCount-1) / (sequenceLength-1);
+				assertEquals("Final digit check agrees "+ptn,scalar.checkFinalDigit(ptn,maxd,digitCount),binary.checkFinalDigit(bptn,maxd,digitCount));
+				assertEquals("Forbidden colors agree "+ptn,scalar.getForbiddenColors(ptn,maxd,digitCount),binary.getForbiddenColors(bptn,maxd,digitCount));
+				assertEquals("Any digit check agrees "+ptn,scalar.checkAnyDigit(ptn,maxd,digitCount),binary.checkAnyDigit(bptn,maxd,digitCount));
+			}
+		}
+	}
+}
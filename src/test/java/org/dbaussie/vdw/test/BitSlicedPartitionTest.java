@@ -0,0 +1,70 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.dbaussie.vdw.check.BitSlicedAPChecker;
+import org.dbaussie.vdw.check.ScalarAPChecker;
+import org.dbaussie.vdw.model.BitSlicedPartition;
+import org.dbaussie.vdw.model.Partition;
+import org.junit.Test;
+
+public class BitSlicedPartitionTest {
+
+	@Test
+	public void testValues() {
+		BitSlicedPartition ptn = new BitSlicedPartition(3,8,2);
+		String testValue = "21020112";
+		ptn.setValue(testValue);
+		assertEquals("Value set correctly",testValue,ptn.toString());
+		assertEquals("Clone value correct",testValue,ptn.clone().toString());
+		for (int color=0; color<3; color++) {
+			for (int d=0; d<8; d++) {
+				assertEquals("Plane "+color+" correct at "+d,ptn.getDigit(d)==color ? 1 : 0,ptn.getPlane(color).getDigit(d));
+			}
+		}
+		ptn.setDigitCount(4);
+		ptn.setDigitCount(6);
+		assertEquals("Regrown digits are in the plane of color 0","210200",ptn.toString());
+		assertEquals(1,ptn.getPlane(0).getDigit(5));
+		assertEquals(0,ptn.getPlane(1).getDigit(5));
+	}
+
+	@Test
+	public void testIncrement() {
+		BitSlicedPartition ptn = new BitSlicedPartition(3,8,2);
+		ptn.setValue("21020122");
+		assertEquals("proceed is true",true,ptn.increment());
+		assertEquals("increment succeeded","21020200",ptn.toString());
+		ptn.setValue("2222");
+		assertEquals("increment wraps",false,ptn.increment());
+		assertEquals("wrapped to zero","0000",ptn.toString());
+	}
+
+	@Test
+	public void testCheckersAgree() {
+		Random random = new Random(1);
+		for (int colorCount=3; colorCount<=5; colorCount++) {
+			for (int sequenceLength=3; sequenceLength<=5; sequenceLength++) {
+				ScalarAPChecker scalar = new ScalarAPChecker(colorCount,sequenceLength);
+				BitSlicedAPChecker sliced = new BitSlicedAPChecker(colorCount,sequenceLength);
+				for (int i=0; i<1000; i++) {
+					int digitCount = sequenceLength + random.nextInt(300);
+					Partition ptn = new Partition(colorCount,digitCount);
+					Partition sptn = sliced.createPartition(digitCount);
+					for (int d=0; d<digitCount; d++) {
+						// mostly the biased binary digits of BinaryPartitionTest to get a reasonable number of AP free partitions
+						int value = random.nextInt(5)==0 ? random.nextInt(colorCount) : (random.nextInt(8)<(d%2==0 ? 5 : 3) ? 1 : 0);
+						ptn.setDigitAt(d,value);
+						sptn.setDigitAt(d,value);
+					}
+					int maxd = (digitCount-1) / (sequenceLength-1);
+					assertEquals("Final digit check agrees "+ptn,scalar.checkFinalDigit(ptn,maxd,digitCount),sliced.checkFinalDigit(sptn,maxd,digitCount));
+					assertEquals("Forbidden colors agree "+ptn,scalar.getForbiddenColors(ptn,maxd,digitCount),sliced.getForbiddenColors(sptn,maxd,digitCount));
+					assertEquals("Any digit check agrees "+ptn,scalar.checkAnyDigit(ptn,maxd,digitCount),sliced.checkAnyDigit(sptn,maxd,digitCount));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.dbaussie.vdw.check.ScalarAPChecker;
+import org.dbaussie.vdw.model.BytePartition;
+import org.dbaussie.vdw.model.Partition;
+import org.junit.Test;
+
+public class BytePartitionTest {
+
+	@Test
+	public void testValues() {
+		BytePartition ptn = new BytePartition(3,8);
+		String testValue = "21020112";
+		ptn.setValue(testValue);
+		assertEquals("Value set correctly",testValue,ptn.toString());
+		assertEquals("Clone value correct",testValue,ptn.clone().toString());
+		ptn.maskTrailingDigits(5);
+		assertEquals("Trailing digits masked","21020122",ptn.toString());
+	}
+
+	@Test
+	public void testIncrement() {
+		BytePartition ptn = new BytePartition(3,8);
+		ptn.setValue("21020122");
+		assertEquals("proceed is true",true,ptn.increment());
+		assertEquals("increment succeeded","21020200",ptn.toString());
+		ptn.setValue("2222");
+		assertEquals("increment wraps",false,ptn.increment());
+		assertEquals("wrapped to zero","0000",ptn.toString());
+	}
+
+	@Test
+	public void testGrowth() {
+		BytePartition ptn = new BytePartition(4,1);
+		for (int d=0; d<5000; d++) {
+			ptn.setDigitCount(d+1);
+			assertEquals("New digit cleared",0,ptn.getLastDigit());
+			ptn.setLastDigit(d%4);
+		}
+		for (int d=0; d<5000; d++) {
+			assertEquals(d%4,ptn.getDigit(d));
+		}
+		ptn.setDigitCount(10);
+		assertEquals("Clone only holds the digits in use",BytePartition.MIN_CAPACITY,ptn.clone().getDigits().length);
+		ptn.setDigitCount(11);
+		assertEquals("Shrunk digits are cleared when regrown",0,ptn.getLastDigit());
+	}
+
+	@Test
+	public void testCheckersAgree() {
+		Random random = new Random(1);
+		for (int colorCount=2; colorCount<=4; colorCount++) {
+			for (int sequenceLength=3; sequenceLength<=5; sequenceLength++) {
+				ScalarAPChecker checker = new ScalarAPChecker(colorCount,sequenceLength);
+				for (int i=0; i<1000; i++) {
+					int digitCount = sequenceLength + random.nextInt(200);
+					Partition ptn = new Partition(colorCount,digitCount);
+					Partition bptn = checker.createPartition(digitCount);
+					assertTrue(bptn instanceof BytePartition);
+					for (int d=0; d<digitCount; d++) {
+						int value = random.nextInt(colorCount);
+						ptn.setDigitAt(d,value);
+						bptn.setDigitAt(d,value);
+					}
+					int maxd = (digitCount-1) / (sequenceLength-1);
+					assertEquals("Forbidden colors agree "+ptn,checker.getForbiddenColors(ptn,maxd,digitCount),checker.getForbiddenColors(bptn,maxd,digitCount));
+					assertEquals("Final digit check agrees "+ptn,checker.checkFinalDigit(ptn,maxd,digitCount),checker.checkFinalDigit(bptn,maxd,digitCount));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.dbaussie.vdw.AbstractVdwGenerator;
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.CertificateReader;
+import org.dbaussie.vdw.store.CertificateWriter;
+import org.dbaussie.vdw.util.ArrayUtil;
+import org.junit.Test;
+
+public class CertificateStoreTest {
+
+	private String createPath() throws IOException {
+		File file = File.createTempFile("vdw",".cert");
+		file.deleteOnExit();
+		return file.getPath();
+	}
+
+	private boolean hasAP(Partition ptn,int sequenceLength) {
+		for (int start=0; start<ptn.digitCount; start++) {
+			for (int d=1; start+(sequenceLength-1)*d<ptn.digitCount; d++) {
+				int count = 1;
+				while (count<sequenceLength && ptn.getDigit(start+count*d)==ptn.getDigit(start)) {
+					count++;
+				}
+				if (count==sequenceLength) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads back every certificate checking that each is a distinct AP free leader of the given length range
+	 */
+	private HashSet<String> readCertificates(String path,int minDigitCount,int maxDigitCount) throws IOException {
+		HashSet<String> certificates = new HashSet<String>();
+		try (CertificateReader reader = new CertificateReader(path)) {
+			while (reader.hasNext()) {
+				Partition ptn = reader.next();
+				assertTrue(ptn.toString(),ptn.digitCount>=minDigitCount && ptn.digitCount<=maxDigitCount);
+				assertFalse(ptn.toString(),hasAP(ptn,reader.sequenceLength));
+				assertTrue(ptn.toString(),CertificateWriter.isLeader(ptn.getUnderlyingArray(),ptn.digitCount,reader.colorCount));
+				assertTrue(ptn.toString(),certificates.add(ptn.toString()));
+			}
+		}
+		return certificates;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		String path = createPath();
+		Random random = new Random(1);
+		HashSet<String> expected = new HashSet<String>();
+		// enough 5 color certificates (3 bits per digit) to need several blocks
+		try (CertificateWriter writer = new CertificateWriter(path,5,3,1)) {
+			for (int i=0; i<20000; i++) {
+				int[] digits = random.ints(1+random.nextInt(40),0,5).toArray();
+				// about half of the normalized certificates are leaders
+				ArrayUtil.normalizeColors(digits,digits.length,5);
+				Partition ptn = new Partition(5,0);
+				ptn.setDigitCount(digits.length);
+				for (int d=0; d<digits.length; d++) {
+					ptn.setDigitAt(d,digits[d]);
+				}
+				if (CertificateWriter.isLeader(ptn.getUnderlyingArray(),ptn.digitCount,5)) {
+					expected.add(ptn.toString());
+				}
+				writer.add(ptn);
+			}
+		}
+		HashSet<String> actual = new HashSet<String>();
+		try (CertificateReader reader = new CertificateReader(path)) {
+			assertEquals(5,reader.colorCount);
+			assertEquals(3,reader.bitsPerDigit);
+			while (reader.hasNext()) {
+				actual.add(reader.next().toString());
+			}
+		}
+		assertTrue(expected.size()>5000);
+		assertEquals(expected,actual);
+	}
+
+	@Test
+	public void testLongestCertificates() throws IOException {
+		AbstractVdwGenerator[] generators = {new VdwGenerator(3,3,-1),new ThreadedVdwGenerator(3,3,-1),new VdwGenerator(3,3,-1)};
+		// the same classes must be recorded without normalization, with forward checking and from any thread
+		((VdwGenerator)generators[2]).useNormalization = false;
+		generators[1].forwardCheckHorizon = 100;
+		HashSet<String> expected = null;
+		for (AbstractVdwGenerator generator : generators) {
+			generator.certificatePath = createPath();
+			generator.calculate();
+			assertEquals(27,generator.getResult());
+			HashSet<String> certificates = readCertificates(generator.certificatePath,26,26);
+			assertFalse(certificates.isEmpty());
+			if (expected==null) {
+				expected = certificates;
+			}
+			assertEquals(expected,certificates);
+		}
+	}
+
+	@Test
+	public void testMinimumLength() throws IOException {
+		AbstractVdwGenerator[] generators = {new VdwGenerator(2,4,-1),new ThreadedVdwGenerator(2,4,-1)};
+		HashSet<String> expected = null;
+		for (AbstractVdwGenerator generator : generators) {
+			generator.certificatePath = createPath();
+			generator.certificateDigitCount = 30;
+			generator.forwardCheckHorizon = 100;
+			generator.calculate();
+			assertEquals(35,generator.getResult());
+			HashSet<String> certificates = readCertificates(generator.certificatePath,30,34);
+			if (expected==null) {
+				expected = certificates;
+			}
+			assertEquals(expected,certificates);
+		}
+		// the longest certificates are recorded along with the shorter ones
+		assertTrue(expected.stream().anyMatch(certificate -> certificate.length()==34));
+	}
+}
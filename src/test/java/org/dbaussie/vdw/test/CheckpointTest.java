@@ -0,0 +1,105 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.checkpoint.Checkpoint;
+import org.dbaussie.vdw.checkpoint.CheckpointFile;
+import org.dbaussie.vdw.checkpoint.SearchFrontier;
+import org.dbaussie.vdw.model.Partition;
+import org.junit.Test;
+
+public class CheckpointTest {
+
+	private String createPath() throws IOException {
+		File file = File.createTempFile("vdw",".ckpt");
+		file.delete();
+		new File(file.getPath()+".0").deleteOnExit();
+		new File(file.getPath()+".1").deleteOnExit();
+		return file.getPath();
+	}
+
+	private Partition createPartition(String digits) {
+		Partition ptn = new Partition(2,digits.length());
+		for (int d=0; d<digits.length(); d++) {
+			ptn.setDigitAt(d,digits.charAt(d)-'0');
+		}
+		return ptn;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		String path = createPath();
+		CheckpointFile file = new CheckpointFile(path);
+		assertNull(file.read());
+		Checkpoint checkpoint = new Checkpoint(2,4,-1);
+		checkpoint.bestDigitCount = 5;
+		checkpoint.bestDigits = new byte[] {0,0,1,0,1};
+		checkpoint.frontierList.add(SearchFrontier.create(3,1,createPartition("0110"),3,new int[] {0,0,0,2,0}));
+		file.write(checkpoint);
+		checkpoint.bestDigitCount = 6;
+		file.write(checkpoint);
+		Checkpoint result = new CheckpointFile(path).read();
+		assertTrue(result.matches(2,4,-1));
+		assertEquals(6,result.bestDigitCount);
+		assertEquals(5,result.bestDigits.length);
+		SearchFrontier frontier = result.frontierList.get(0);
+		assertEquals(3,frontier.threadNumber);
+		assertEquals(1,frontier.prefixLength);
+		assertEquals(3,frontier.digitCount);
+		assertTrue(frontier.isStarted());
+		int[] stack = new int[8];
+		frontier.restoreForbiddenColors(stack);
+		assertEquals(2,stack[3]);
+		// a torn write of the newest file falls back to the previous checkpoint
+		try (RandomAccessFile raf = new RandomAccessFile(path+".0","rw")) {
+			raf.seek(raf.length()-1);
+			raf.write(0x7f);
+		}
+		assertEquals(5,new CheckpointFile(path).read().bestDigitCount);
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		// a started search of every certificate beginning with 00 and then 01 covers the whole normalized search
+		String path = createPath();
+		Checkpoint checkpoint = new Checkpoint(2,4,-1);
+		checkpoint.frontierList.add(SearchFrontier.create(0,1,createPartition("00"),2,new int[3]));
+		new CheckpointFile(path).write(checkpoint);
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(2,4,-1);
+		generator.checkpointPath = path;
+		generator.calculate();
+		assertEquals(35,generator.getResult());
+		// the final checkpoint has no work left so resuming it just returns the answer
+		checkpoint = new CheckpointFile(path).read();
+		assertTrue(checkpoint.isComplete());
+		assertEquals(34,checkpoint.bestDigitCount);
+		generator = new ThreadedVdwGenerator(2,4,-1);
+		generator.checkpointPath = path;
+		generator.calculate();
+		assertEquals(35,generator.getResult());
+	}
+
+	@Test
+	public void testDecideThenGenerate() throws IOException {
+		// a decision with forward checking prunes subtrees longer than the best so far so it must leave no checkpoint
+		String path = createPath();
+		for (int digitCount : new int[] { 35, 40 }) {
+			ThreadedVdwGenerator generator = new ThreadedVdwGenerator(2,4);
+			generator.forwardCheckHorizon = 40;
+			generator.checkpointPath = path;
+			assertFalse(generator.decide(digitCount).isSatisfiable());
+			assertNull(new CheckpointFile(path).read());
+			generator = new ThreadedVdwGenerator(2,4);
+			generator.checkpointPath = path;
+			generator.calculate();
+			assertEquals(35,generator.getResult());
+			new File(path+".0").delete();
+			new File(path+".1").delete();
+		}
+	}
+}
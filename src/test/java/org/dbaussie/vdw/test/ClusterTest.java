@@ -0,0 +1,87 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dbaussie.vdw.cluster.Coordinator;
+import org.dbaussie.vdw.cluster.Worker;
+import org.junit.Test;
+
+public class ClusterTest {
+
+	private int runWorkers(Coordinator coordinator,int workerCount) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i=0; i<workerCount; i++) {
+			Worker worker = new Worker("localhost",coordinator.getPort());
+			worker.parallelism = 1;
+			futures.add(executor.submit(worker::run));
+		}
+		int result = coordinator.awaitResult();
+		for (Future<Integer> future : futures) {
+			assertEquals(result,future.get().intValue());
+		}
+		executor.shutdown();
+		return result;
+	}
+
+	@Test
+	public void testWorkers() throws Exception {
+		Coordinator coordinator = new Coordinator(3,3,5);
+		coordinator.start();
+		assertEquals(27,runWorkers(coordinator,3));
+		assertEquals(26,coordinator.getBestCertificate().length());
+		coordinator.stop();
+	}
+
+	@Test
+	public void testLostLeases() throws Exception {
+		Coordinator coordinator = new Coordinator(2,4,7);
+		coordinator.leaseTimeout = 200;
+		coordinator.start();
+		// one client takes a lease and hangs, another takes a lease and disconnects
+		Socket hung = new Socket("localhost",coordinator.getPort());
+		PrintWriter writer = new PrintWriter(hung.getOutputStream(),true);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(hung.getInputStream()));
+		writer.println(Coordinator.LEASE);
+		assertTrue(reader.readLine().startsWith(Coordinator.PREFIX));
+		try (Socket dead = new Socket("localhost",coordinator.getPort())) {
+			writer = new PrintWriter(dead.getOutputStream(),true);
+			reader = new BufferedReader(new InputStreamReader(dead.getInputStream()));
+			writer.println(Coordinator.LEASE);
+			assertTrue(reader.readLine().startsWith(Coordinator.PREFIX));
+		}
+		assertEquals(35,runWorkers(coordinator,2));
+		hung.close();
+		coordinator.stop();
+	}
+
+	@Test
+	public void testWorkerProcesses() throws Exception {
+		Coordinator coordinator = new Coordinator(2,4,8);
+		coordinator.start();
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		List<Process> processes = new ArrayList<Process>();
+		for (int i=0; i<2; i++) {
+			ProcessBuilder builder = new ProcessBuilder(java,"-cp",System.getProperty("java.class.path"),Worker.class.getName(),"localhost",""+coordinator.getPort(),"1");
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+			processes.add(builder.start());
+		}
+		assertEquals(35,coordinator.awaitResult());
+		for (Process process : processes) {
+			assertEquals(0,process.waitFor());
+		}
+		coordinator.stop();
+	}
+}
@@ -0,0 +1,52 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.dbaussie.vdw.check.IncrementalAPChecker;
+import org.dbaussie.vdw.check.ScalarAPChecker;
+import org.dbaussie.vdw.model.Partition;
+import org.junit.Test;
+
+public class IncrementalAPCheckerTest {
+
+	/**
+	 * Performs a random walk of extensions and backtracks and compares the forbidden colors at every step
+	 */
+	private void checkRandomWalk(int colorCount,int sequenceLength,long seed) {
+		Random random = new Random(seed);
+		ScalarAPChecker scalar = new ScalarAPChecker(colorCount,sequenceLength);
+		IncrementalAPChecker incremental = new IncrementalAPChecker(colorCount,sequenceLength);
+		Partition ptn = new Partition(colorCount,1);
+		int digitCount = 1;
+		for (int step=0; step<20000; step++) {
+			int maxd = (digitCount-1) / (sequenceLength-1);
+			int expected = scalar.getForbiddenColors(ptn,maxd,digitCount);
+			assertEquals("Forbidden colors agree "+ptn,expected,incremental.getForbiddenColors(ptn,maxd,digitCount));
+			if (random.nextInt(4)==0 && digitCount>1) {
+				// backtrack a few digits and change the new last digit
+				digitCount = Math.max(1,digitCount-1-random.nextInt(5));
+				ptn.setDigitCount(digitCount);
+				ptn.setLastDigit(random.nextInt(colorCount));
+			} else if (digitCount>=1200) {
+				digitCount = 1;
+				ptn.setDigitCount(digitCount);
+				incremental.reset();
+			} else {
+				digitCount++;
+				ptn.setDigitCount(digitCount);
+				ptn.setLastDigit(random.nextInt(colorCount));
+			}
+		}
+	}
+
+	@Test
+	public void testAgreesWithScalar() {
+		checkRandomWalk(2,3,1);
+		checkRandomWalk(2,5,2);
+		checkRandomWalk(3,3,3);
+		checkRandomWalk(3,4,4);
+		checkRandomWalk(4,4,5);
+	}
+}
@@ -0,0 +1,124 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.dbaussie.vdw.Decision;
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.model.Partition;
+import org.dbaussie.vdw.store.PrefixCache;
+import org.junit.Test;
+
+public class PrefixCacheTest {
+
+	private String createPath() throws IOException {
+		File file = File.createTempFile("vdw",".cache");
+		file.delete();
+		file.deleteOnExit();
+		new File(file.getPath()+".lock").deleteOnExit();
+		return file.getPath();
+	}
+
+	private Partition createPartition(int colorCount,String digits) {
+		Partition ptn = new Partition(colorCount,0);
+		ptn.setValue(digits);
+		return ptn;
+	}
+
+	private ThreadedVdwGenerator createGenerator(int initialDigitCount,PrefixCache cache) {
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(2,4,initialDigitCount);
+		generator.registerMetrics = false;
+		generator.reportInterval = 0;
+		generator.estimateProbeCount = 0;
+		generator.prefixCache = cache;
+		return generator;
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		String path = createPath();
+		try (PrefixCache cache = new PrefixCache(path)) {
+			cache.add(createPartition(3,"21021"),4,3,9,createPartition(3,"210210201"));
+			cache.add(createPartition(3,"2200"),4,3,0,null);
+			// redundant as its prefix is already exhausted
+			cache.add(createPartition(3,"21021"),5,3,9,createPartition(3,"210210201"));
+			assertEquals(2,cache.size());
+			assertNotNull(cache.find(createPartition(3,"210211"),6,3));
+			try {
+				new PrefixCache(path).close();
+				fail("The cache was opened twice");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		// a damaged record at the end is dropped when the file is compacted
+		Files.write(Paths.get(path),new byte[] { 0, 0, 0, 40, 1, 2, 3 },StandardOpenOption.APPEND);
+		try (PrefixCache cache = new PrefixCache(path)) {
+			assertEquals(2,cache.size());
+			assertNull(cache.find(createPartition(3,"2101"),4,3));
+			assertNull(cache.find(createPartition(3,"2102"),4,4));
+			PrefixCache.Entry entry = cache.find(createPartition(3,"21021"),5,3);
+			assertEquals(9,entry.maxDigitCount);
+			Partition ptn = new Partition(3,0);
+			entry.restoreCertificate(ptn);
+			assertEquals("210210201",ptn.toString());
+			entry = cache.find(createPartition(3,"22000"),5,3);
+			assertEquals(0,entry.maxDigitCount);
+			assertEquals(0,entry.certificate.length);
+		}
+		// with 2 bits per digit the 13 digits of the first record take 4 bytes and the 4 of the second 1 byte
+		int recordSize = PrefixCache.RECORD_HEADER_SIZE + PrefixCache.RECORD_TRAILER_SIZE;
+		assertEquals(PrefixCache.HEADER_SIZE+recordSize+4+recordSize+1,Files.size(Paths.get(path)));
+	}
+
+	@Test
+	public void testColorPermutations() throws IOException {
+		try (PrefixCache cache = new PrefixCache(createPath())) {
+			// a prefix and its color permutations share one entry
+			cache.add(createPartition(3,"01201"),5,3,9,createPartition(3,"012012102"));
+			cache.add(createPartition(3,"21021"),5,3,9,createPartition(3,"210210120"));
+			assertEquals(1,cache.size());
+			// the certificate is returned in the colors of the prefix looked up
+			PrefixCache.Entry entry = cache.find(createPartition(3,"102100"),6,3);
+			Partition ptn = new Partition(3,0);
+			entry.restoreCertificate(ptn);
+			assertEquals("102102012",ptn.toString());
+			// colors missing from the prefix
+			cache.add(createPartition(3,"0000"),4,3,0,null);
+			assertNotNull(cache.find(createPartition(3,"11110"),5,3));
+			assertNull(cache.find(createPartition(3,"0001"),4,3));
+		}
+	}
+
+	@Test
+	public void testRepeatedSearch() throws IOException {
+		String path = createPath();
+		try (PrefixCache cache = new PrefixCache(path)) {
+			ThreadedVdwGenerator generator = createGenerator(-1,cache);
+			generator.generate();
+			assertEquals(35,generator.getResult());
+			assertTrue(generator.getVisitedCount()>0);
+			assertTrue(cache.size()>0);
+		}
+		try (PrefixCache cache = new PrefixCache(path)) {
+			// every initial certificate is found in the cache, even when they are longer than last time
+			for (int initialDigitCount : new int[] { -1, 8 }) {
+				ThreadedVdwGenerator generator = createGenerator(initialDigitCount,cache);
+				generator.generate();
+				assertEquals(35,generator.getResult());
+				assertEquals(34,generator.getBestDigitCount());
+				assertEquals(0,generator.getVisitedCount());
+			}
+			ThreadedVdwGenerator generator = createGenerator(-1,cache);
+			Decision decision = generator.decide(34);
+			assertTrue(decision.isSatisfiable());
+			assertEquals(34,decision.certificate.digitCount);
+			assertFalse(generator.decide(35).isSatisfiable());
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.sweep.SweepInstance;
+import org.dbaussie.vdw.sweep.SweepRunner;
+import org.junit.Test;
+
+public class SweepRunnerTest {
+
+	@Test
+	public void testSweep() throws IOException {
+		File file = File.createTempFile("vdw",".tsv");
+		file.deleteOnExit();
+		List<SweepInstance> instanceList = new ArrayList<SweepInstance>();
+		instanceList.add(SweepInstance.parse("2 4"));
+		instanceList.add(SweepInstance.parse("3 3 5"));
+		instanceList.add(SweepInstance.parse("2 3"));
+		SweepRunner runner = new SweepRunner();
+		runner.parallelism = 2;
+		runner.resultPath = file.getPath();
+		runner.run(instanceList);
+		int[] expected = { 35, 27, 9 };
+		for (int index=0; index<expected.length; index++) {
+			SweepInstance instance = instanceList.get(index);
+			assertEquals(instance.toString(),SweepInstance.DONE,instance.status);
+			assertEquals(instance.toString(),expected[index],instance.result);
+			assertEquals(instance.toString(),expected[index]-1,instance.bestDigitCount);
+			assertTrue(instance.estimatedCount>0);
+		}
+		// W(2,3) is estimated to be the smallest so it finishes first
+		List<String> lines = Files.readAllLines(Paths.get(file.getPath()));
+		assertEquals(SweepInstance.HEADER,lines.get(0));
+		assertEquals(4,lines.size());
+		assertTrue(lines.get(1).startsWith("W(2,3)\t-1\tdone\t9\t8\t"));
+	}
+
+	@Test
+	public void testTimeLimit() throws IOException {
+		List<SweepInstance> instanceList = new ArrayList<SweepInstance>();
+		instanceList.add(SweepInstance.parse("2 5 -1 1"));
+		SweepRunner runner = new SweepRunner();
+		runner.order = SweepRunner.ORDER_SMALLEST;
+		runner.run(instanceList);
+		SweepInstance instance = instanceList.get(0);
+		assertEquals(SweepInstance.TIMED_OUT,instance.status);
+		assertEquals(-1,instance.result);
+		// the lower bound is far from W(2,5)=178 but well past the initial certificates
+		assertTrue(instance.bestDigitCount>20 && instance.bestDigitCount<178);
+		assertTrue(instance.duration<30000);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testStoppedDecision() {
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(2,5,-1);
+		generator.registerMetrics = false;
+		generator.reportInterval = 0;
+		generator.timeLimit = 1;
+		generator.decide(177);
+	}
+}
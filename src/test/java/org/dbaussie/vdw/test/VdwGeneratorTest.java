@@ -0,0 +1,423 @@
+package org.dbaussie.vdw.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.dbaussie.vdw.AbstractVdwGenerator;
+import org.dbaussie.vdw.ColoringCount;
+import org.dbaussie.vdw.Decision;
+import org.dbaussie.vdw.LocalSearchGenerator;
+import org.dbaussie.vdw.PalindromeVdwGenerator;
+import org.dbaussie.vdw.PortfolioVdwGenerator;
+import org.dbaussie.vdw.PowerResidueGenerator;
+import org.dbaussie.vdw.PrefixSpliterator;
+import org.dbaussie.vdw.ThreadedVdwGenerator;
+import org.dbaussie.vdw.VdwGenerator;
+import org.dbaussie.vdw.metrics.SearchMetrics;
+import org.junit.Test;
+
+public class VdwGeneratorTest {
+
+	private void assertResult(AbstractVdwGenerator generator,int expected) {
+		generator.calculate();
+		assertEquals(generator+" with "+generator.getAlgorithm(),expected,generator.getResult());
+	}
+
+	@Test
+	public void testKnownValues() {
+		assertResult(new VdwGenerator(2,3,-1),9);
+		assertResult(new VdwGenerator(2,4,-1),35);
+		assertResult(new VdwGenerator(3,3,-1),27);
+		assertResult(new ThreadedVdwGenerator(2,4,-1),35);
+		assertResult(new ThreadedVdwGenerator(3,3,-1),27);
+	}
+
+	@Test
+	public void testWorkStealing() {
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(3,3,-1);
+		generator.parallelism = 4;
+		generator.donationInterval = 16;
+		assertResult(generator,27);
+		generator = new ThreadedVdwGenerator(2,4,-1);
+		generator.parallelism = 3;
+		generator.donationInterval = 64;
+		assertResult(generator,35);
+	}
+
+	@Test
+	public void testSymmetryReduction() {
+		// the normalized search must agree with the search of every certificate
+		int[][] instances = {{2,3,9},{2,4,35},{3,3,27}};
+		for (int[] instance : instances) {
+			VdwGenerator generator = new VdwGenerator(instance[0],instance[1],-1);
+			generator.useNormalization = false;
+			assertResult(generator,instance[2]);
+			ThreadedVdwGenerator threaded = new ThreadedVdwGenerator(instance[0],instance[1],3);
+			assertResult(threaded,instance[2]);
+			threaded = new ThreadedVdwGenerator(instance[0],instance[1],3);
+			threaded.useNormalization = false;
+			assertResult(threaded,instance[2]);
+		}
+	}
+
+	@Test
+	public void testEstimator() {
+		int[][] instances = {{2,4,35},{3,3,27}};
+		for (int[] instance : instances) {
+			VdwGenerator generator = new VdwGenerator(instance[0],instance[1],-1);
+			double estimate = generator.estimate();
+			assertResult(generator,instance[2]);
+			long visitedCount = generator.getVisitedCount();
+			assertEquals(generator.toString(),1.0,estimate/visitedCount,0.1);
+			// the threaded search visits exactly the same tree however it is split up
+			ThreadedVdwGenerator threaded = new ThreadedVdwGenerator(instance[0],instance[1],-1);
+			threaded.parallelism = 2;
+			threaded.donationInterval = 64;
+			assertResult(threaded,instance[2]);
+			assertEquals(visitedCount,threaded.getVisitedCount());
+		}
+	}
+
+	@Test
+	public void testDecision() {
+		AbstractVdwGenerator[] generators = {new VdwGenerator(2,4,-1),new VdwGenerator(3,3,-1),new ThreadedVdwGenerator(2,4,-1),new ThreadedVdwGenerator(3,3,-1)};
+		int[] results = {35,27,35,27};
+		for (int i=0; i<generators.length; i++) {
+			AbstractVdwGenerator generator = generators[i];
+			Decision decision = generator.decide(results[i]-1);
+			assertTrue(decision.toString(),decision.isSatisfiable());
+			assertEquals(results[i]-1,decision.certificate.digitCount);
+			decision = generator.decide(results[i]);
+			assertFalse(decision.toString(),decision.isSatisfiable());
+			assertTrue(decision.subtreeCount>0);
+			// shorter than the initial certificates
+			decision = generator.decide(3);
+			assertTrue(decision.toString(),decision.isSatisfiable());
+			assertEquals(3,decision.certificate.digitCount);
+			// the generator is left ready for a full search
+			assertResult(generator,results[i]);
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName query = new ObjectName(SearchMetrics.DOMAIN+":type=SearchMetrics,*");
+		AbstractVdwGenerator[] generators = {new VdwGenerator(2,4,-1),new ThreadedVdwGenerator(3,3,-1)};
+		int[] results = {35,27};
+		for (int i=0; i<generators.length; i++) {
+			AbstractVdwGenerator generator = generators[i];
+			assertResult(generator,results[i]);
+			SearchMetrics metrics = generator.getMetrics();
+			assertEquals(generator.getVisitedCount(),metrics.getNodeCount());
+			assertEquals(results[i]-1,metrics.getMaxDepth());
+			assertEquals(metrics.getNodeCount(),LongStream.of(metrics.getDepthHistogram()).sum());
+			assertTrue(metrics.getBacktrackCount()>0);
+			// the MBean is only registered while searching
+			assertEquals(0,server.queryNames(query,null).size());
+		}
+		SearchMetrics metrics = new SearchMetrics("test");
+		metrics.start(true,0);
+		// the MBean is registered in the background
+		for (int i=0; i<100 && server.queryNames(query,null).isEmpty(); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(1,server.queryNames(query,null).size());
+		metrics.stop();
+		assertEquals(0,server.queryNames(query,null).size());
+	}
+
+	@Test
+	public void testWithoutBitPacking() {
+		VdwGenerator generator = new VdwGenerator(2,4,-1);
+		generator.useBitPacking = false;
+		assertResult(generator,35);
+		ThreadedVdwGenerator threaded = new ThreadedVdwGenerator(2,3,-1);
+		threaded.useBitPacking = false;
+		assertResult(threaded,9);
+	}
+
+	@Test
+	public void testBitSlicing() {
+		VdwGenerator generator = new VdwGenerator(3,3,-1);
+		generator.useBitSlicing = true;
+		assertResult(generator,27);
+		ThreadedVdwGenerator threaded = new ThreadedVdwGenerator(3,3,-1);
+		threaded.useBitSlicing = true;
+		assertResult(threaded,27);
+	}
+
+	@Test
+	public void testIncrementalChecker() {
+		VdwGenerator generator = new VdwGenerator(3,3,-1);
+		generator.useIncrementalChecker = true;
+		assertResult(generator,27);
+		ThreadedVdwGenerator threaded = new ThreadedVdwGenerator(2,4,-1);
+		threaded.useBitPacking = false;
+		threaded.useIncrementalChecker = true;
+		assertResult(threaded,35);
+	}
+
+	/**
+	 * Counts the colorings with digitCount digits that have no monochromatic AP by trying every coloring
+	 */
+	private long countColorings(int colorCount,int sequenceLength,int digitCount) {
+		long result = 0;
+		int[] digits = new int[digitCount];
+		long total = (long)Math.pow(colorCount,digitCount);
+		for (long index=0; index<total; index++) {
+			long value = index;
+			for (int d=0; d<digitCount; d++) {
+				digits[d] = (int)(value % colorCount);
+				value /= colorCount;
+			}
+			boolean hasAP = false;
+			for (int start=0; start<digitCount && !hasAP; start++) {
+				for (int step=1; start+(sequenceLength-1)*step<digitCount && !hasAP; step++) {
+					int length = 1;
+					while (length<sequenceLength && digits[start+length*step]==digits[start]) {
+						length++;
+					}
+					hasAP = length==sequenceLength;
+				}
+			}
+			if (!hasAP) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testCount() {
+		int[][] instances = {{2,3,9,9},{3,3,27,10},{2,4,35,14}};
+		for (int[] instance : instances) {
+			ThreadedVdwGenerator generator = new ThreadedVdwGenerator(instance[0],instance[1],-1);
+			ColoringCount count = generator.count();
+			assertEquals(instance[2],generator.getResult());
+			assertEquals(instance[2]-1,count.getMaxDigitCount());
+			for (int digitCount=1; digitCount<=instance[3]; digitCount++) {
+				assertEquals(count.toString(),countColorings(instance[0],instance[1],digitCount),count.getCount(digitCount));
+			}
+			// without the normalization every coloring is visited
+			generator.useNormalization = false;
+			ColoringCount fullCount = generator.count();
+			for (int digitCount=1; digitCount<instance[2]; digitCount++) {
+				assertEquals(count.getCount(digitCount),fullCount.getVisitedCount(digitCount));
+				assertEquals(count.getCount(digitCount),fullCount.getCount(digitCount));
+			}
+		}
+	}
+
+	@Test
+	public void testForwardChecking() {
+		AbstractVdwGenerator[] generators = {new VdwGenerator(3,3,-1),new VdwGenerator(2,4,-1),new ThreadedVdwGenerator(3,3,-1),new ThreadedVdwGenerator(2,4,-1)};
+		int[] results = {27,35,27,35};
+		for (int i=0; i<generators.length; i++) {
+			AbstractVdwGenerator generator = generators[i];
+			generator.calculate();
+			long visitedCount = generator.getVisitedCount();
+			generator.forwardCheckHorizon = 100;
+			assertResult(generator,results[i]);
+			// pruning only ever removes certificates that cannot beat the best so far
+			assertTrue(generator.getVisitedCount()+" < "+visitedCount,generator.getVisitedCount()<visitedCount);
+			Decision decision = generator.decide(results[i]-1);
+			assertTrue(decision.toString(),decision.isSatisfiable());
+			decision = generator.decide(results[i]);
+			assertFalse(decision.toString(),decision.isSatisfiable());
+		}
+	}
+
+	@Test
+	public void testLocalSearch() {
+		// a single walker with a step limit is repeatable whatever the speed of the machine
+		LocalSearchGenerator generator = createLocalSearch(2,4);
+		generator.calculate();
+		// only a lower bound is known when the steps run out
+		assertEquals(-1,generator.getResult());
+		int bestDigitCount = generator.getBestDigitCount();
+		assertTrue(bestDigitCount+" digits",bestDigitCount>=30 && bestDigitCount<35);
+		assertEquals(bestDigitCount,generator.getBestCertificate().digitCount);
+		assertTrue(isAPFree(generator.getBestCertificate().getUnderlyingArray(),4));
+		generator = createLocalSearch(3,3);
+		Decision decision = generator.decide(24);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		assertEquals(24,decision.certificate.digitCount);
+		assertTrue(isAPFree(decision.certificate.getUnderlyingArray(),3));
+		// running out of steps is not a no
+		generator = createLocalSearch(2,4);
+		try {
+			generator.decide(35);
+			fail("W(2,4) > 35 was decided by local search");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private LocalSearchGenerator createLocalSearch(int colorCount,int sequenceLength) {
+		LocalSearchGenerator generator = new LocalSearchGenerator(colorCount,sequenceLength);
+		generator.walkerCount = 1;
+		generator.seed = 1;
+		generator.timeLimit = 0;
+		generator.stepLimit = 1 << 14;
+		return generator;
+	}
+
+	@Test
+	public void testPrefixEnumeration() {
+		// the pruned enumeration must find exactly the AP free (and normalized) colorings the brute force one does, in order
+		int[][] instances = {{2,4,12},{3,3,7},{4,3,5}};
+		for (int[] instance : instances) {
+			for (boolean useNormalization : new boolean[] {true,false}) {
+				VdwGenerator generator = new VdwGenerator(instance[0],instance[1],instance[2]);
+				generator.useNormalization = useNormalization;
+				List<String> expected = new ArrayList<String>();
+				int[] digits = new int[instance[2]];
+				for (long value=0; value<Math.pow(instance[0],instance[2]); value++) {
+					long remaining = value;
+					for (int d=digits.length-1; d>=0; d--) {
+						digits[d] = (int)(remaining % instance[0]);
+						remaining /= instance[0];
+					}
+					if (isAPFree(digits,instance[1]) && (!useNormalization || isNormalized(digits,instance[0]))) {
+						expected.add(Arrays.toString(digits));
+					}
+				}
+				List<String> found = generator.streamCertificates(instance[2]).map(ptn -> Arrays.toString(ptn.getUnderlyingArray())).collect(Collectors.toList());
+				assertEquals(expected,found);
+				List<String> parallel = StreamSupport.stream(new PrefixSpliterator(generator,instance[2]),true)
+						.map(ptn -> Arrays.toString(ptn.getUnderlyingArray())).collect(Collectors.toList());
+				assertEquals(expected,parallel);
+			}
+		}
+		// streaming the initial certificates into the search gives the same answers
+		ThreadedVdwGenerator generator = new ThreadedVdwGenerator(3,3,14);
+		generator.prefixWindow = 8;
+		generator.parallelism = 3;
+		assertResult(generator,27);
+		generator = new ThreadedVdwGenerator(2,4,20);
+		generator.prefixWindow = 4;
+		assertResult(generator,35);
+		Decision decision = generator.decide(34);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		decision = generator.decide(35);
+		assertFalse(decision.toString(),decision.isSatisfiable());
+	}
+
+	private boolean isAPFree(int[] digits,int sequenceLength) {
+		for (int start=0; start<digits.length; start++) {
+			for (int d=1; start+(sequenceLength-1)*d<digits.length; d++) {
+				int i = 1;
+				while (i<sequenceLength && digits[start+i*d]==digits[start]) {
+					i++;
+				}
+				if (i==sequenceLength) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isNormalized(int[] digits,int colorCount) {
+		int lowestColor = colorCount;
+		for (int digit : digits) {
+			if (digit<lowestColor-1) {
+				return false;
+			}
+			lowestColor = Math.min(lowestColor,digit);
+		}
+		return true;
+	}
+
+	@Test
+	public void testPalindrome() {
+		PalindromeVdwGenerator generator = new PalindromeVdwGenerator(2,4);
+		generator.timeLimit = 0;
+		generator.calculate();
+		assertEquals(-1,generator.getResult());
+		assertTrue(generator.isExhausted());
+		// no extremal certificate of W(2,4) is a palindrome
+		assertEquals(24,generator.getBestDigitCount());
+		int[] digits = generator.getBestCertificate().getUnderlyingArray();
+		for (int d=0; d<digits.length; d++) {
+			assertEquals(digits[d],digits[digits.length-1-d]);
+		}
+		// removing both ends of a palindrome leaves one so there are none at all past 26 digits
+		for (int digitCount=25; digitCount<=26; digitCount++) {
+			int[] palindrome = new int[digitCount];
+			for (int half=0; half<1 << (digitCount+1)/2; half++) {
+				for (int d=0; d<digitCount; d++) {
+					palindrome[d] = half >> Math.abs(2*d-digitCount+1)/2 & 1;
+				}
+				assertFalse(Arrays.toString(palindrome),isAPFree(palindrome,4));
+			}
+		}
+		try {
+			generator.decide(25);
+			fail("W(2,4) > 25 was decided by the palindrome search");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		generator = new PalindromeVdwGenerator(3,3);
+		Decision decision = generator.decide(26);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		generator = new PalindromeVdwGenerator(2,5);
+		decision = generator.decide(176);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		assertEquals(176,decision.certificate.digitCount);
+	}
+
+	@Test
+	public void testPortfolio() {
+		// a run that searches the whole tree without restarting proves the result
+		PortfolioVdwGenerator generator = new PortfolioVdwGenerator(2,4);
+		generator.parallelism = 3;
+		generator.donationInterval = 64;
+		assertResult(generator,35);
+		generator = new PortfolioVdwGenerator(3,3);
+		generator.parallelism = 3;
+		generator.restartBase = 0;
+		assertResult(generator,27);
+		generator = new PortfolioVdwGenerator(3,3);
+		generator.parallelism = 2;
+		generator.restartBase = 4;
+		Decision decision = generator.decide(26);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		assertEquals(26,decision.certificate.digitCount);
+		assertEquals(1,PortfolioVdwGenerator.getLubyTerm(1));
+		assertEquals(4,PortfolioVdwGenerator.getLubyTerm(7));
+		assertEquals(1,PortfolioVdwGenerator.getLubyTerm(8));
+		assertEquals(8,PortfolioVdwGenerator.getLubyTerm(15));
+		assertEquals(2,PortfolioVdwGenerator.getLubyTerm(10));
+	}
+
+	@Test
+	public void testPowerResidue() {
+		PowerResidueGenerator generator = new PowerResidueGenerator(3,4);
+		generator.maxPrime = 1000;
+		generator.calculate();
+		assertEquals(-1,generator.getResult());
+		assertEquals("[7, 13, 19, 37, 97]",generator.getValidPrimes().toString());
+		// the coloring of Z_97 repeated 3 times and extended by a digit reaches W(3,4)-1
+		assertEquals(292,generator.getBestDigitCount());
+		assertEquals(292,generator.getBestCertificate().digitCount);
+		Decision decision = generator.decide(290);
+		assertTrue(decision.toString(),decision.isSatisfiable());
+		generator = new PowerResidueGenerator(2,5);
+		assertFalse(generator.isValidPrime(41));
+		assertTrue(generator.isValidPrime(37));
+		assertTrue(generator.construct(37).digitCount>4*37);
+		assertNull(generator.construct(41));
+	}
+}